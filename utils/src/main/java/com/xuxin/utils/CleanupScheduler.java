@@ -0,0 +1,374 @@
+package com.xuxin.utils;
+
+import android.content.Context;
+import android.os.Process;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台分批清理
+ * 每个清理任务对应一个目录，在低优先级线程中执行；每一轮删除的时间或字节数达到预算后让出，
+ * 间隔一段时间后从上次停下的位置继续，避免一次性清理大量文件时长时间占用磁盘
+ * 每一轮的耗时、删除的文件数和字节数记录在{@link #getRuns()}中；所有任务完成后自动停止并释放线程
+ * <pre>
+ * CleanupScheduler scheduler = new CleanupScheduler(50, 8 * 1024 * 1024, 200);
+ * scheduler.addInternalCache(context);
+ * scheduler.addCustomPath(path);
+ * scheduler.start();
+ * </pre>
+ */
+public class CleanupScheduler {
+
+    /**
+     * 保留最近的轮次记录个数
+     */
+    private static final int MAX_RUNS = 100;
+
+    private final long timeBudgetMs;
+    private final long byteBudget;
+    private final long intervalMs;
+    private final List<Job> jobs = new ArrayList<>();
+    private final LinkedList<Run> runs = new LinkedList<>();
+    /**
+     * 保证同一时间只有一轮在执行，删除文件时只持有这个锁，不影响查询记录
+     */
+    private final Object stepLock = new Object();
+    private ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?> future;
+    private long totalFreedBytes;
+    private int totalDeletedFiles;
+
+    /**
+     * @param timeBudgetMs 每一轮最多执行的时间
+     * @param byteBudget   每一轮最多删除的字节数
+     * @param intervalMs   两轮之间的间隔
+     */
+    public CleanupScheduler(long timeBudgetMs, long byteBudget, long intervalMs) {
+        this.timeBudgetMs = timeBudgetMs;
+        this.byteBudget = byteBudget;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * 添加清理任务
+     *
+     * @param name           任务名，用于记录
+     * @param directory      目录，不存在时任务直接完成
+     * @param deleteThisPath 是否删除目录本身
+     */
+    public synchronized void addJob(String name, File directory, boolean deleteThisPath) {
+        if (directory != null) {
+            jobs.add(new Job(name, directory, deleteThisPath));
+        }
+    }
+
+    /**
+     * 清除本应用内部缓存(/data/data/com.xxx.xxx/cache)
+     */
+    public void addInternalCache(Context context) {
+        addJob("cache", context.getCacheDir(), false);
+    }
+
+    /**
+     * 清除外部cache下的内容(/mnt/sdcard/android/data/com.xxx.xxx/cache)
+     */
+    public void addExternalCache(Context context) {
+        addJob("externalCache", context.getExternalCacheDir(), false);
+    }
+
+    /**
+     * 清除本应用所有数据库(/data/data/com.xxx.xxx/databases)，请确认数据库都已关闭
+     */
+    public void addDatabases(Context context) {
+        addJob("databases", context.getDatabasePath("x").getParentFile(), false);
+    }
+
+    /**
+     * 清除app_webview(/data/data/com.xxx.xxx/app_webview)
+     */
+    public void addWebDir(Context context) {
+        addJob("webview", new File(context.getFilesDir().getParentFile(), "app_webview"), false);
+    }
+
+    /**
+     * 清除自定义路径下的文件，使用需小心，请不要误删
+     */
+    public void addCustomPath(String filePath) {
+        addJob(filePath, new File(filePath), false);
+    }
+
+    /**
+     * 开始执行，已开始时不做处理
+     */
+    public synchronized void start() {
+        if (future != null) {
+            return;
+        }
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "CleanupScheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        future = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                runOnce();
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 暂停，正在执行的一轮结束后生效，再次{@link #start()}时从停下的位置继续
+     */
+    public synchronized void stop() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    /**
+     * 暂停并释放线程，所有任务完成后会自动调用
+     */
+    public synchronized void shutdown() {
+        stop();
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return 所有任务是否都已完成
+     */
+    public synchronized boolean isFinished() {
+        for (Job job : jobs) {
+            if (!job.finished) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 最近的轮次记录，最早的在前
+     */
+    public synchronized List<Run> getRuns() {
+        return Collections.unmodifiableList(new ArrayList<>(runs));
+    }
+
+    public synchronized long getTotalFreedBytes() {
+        return totalFreedBytes;
+    }
+
+    public synchronized int getTotalDeletedFiles() {
+        return totalDeletedFiles;
+    }
+
+    /**
+     * 执行一轮，所有任务完成后停止调度并释放线程
+     *
+     * @return 本轮的记录，没有待执行的任务时返回null
+     */
+    public Run runOnce() {
+        synchronized (stepLock) {
+            List<Job> pending = pendingJobs();
+            if (pending.isEmpty()) {
+                shutdown();
+                return null;
+            }
+            long start = System.currentTimeMillis();
+            Run run = new Run(start);
+            long deadline = start + timeBudgetMs;
+            for (Job job : pending) {
+                if (run.freedBytes >= byteBudget || System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                job.step(run, deadline, byteBudget);
+                if (job.finished) {
+                    run.completedJobs.add(job.name);
+                }
+            }
+            run.elapsedMillis = System.currentTimeMillis() - start;
+            synchronized (this) {
+                run.finished = isFinished();
+                totalFreedBytes += run.freedBytes;
+                totalDeletedFiles += run.deletedFiles;
+                runs.add(run);
+                if (runs.size() > MAX_RUNS) {
+                    runs.removeFirst();
+                }
+                if (run.finished) {
+                    shutdown();
+                }
+            }
+            return run;
+        }
+    }
+
+    private synchronized List<Job> pendingJobs() {
+        List<Job> pending = new ArrayList<>();
+        for (Job job : jobs) {
+            if (!job.finished) {
+                pending.add(job);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 一个目录的清理任务，stack保存未清理完的目录，下一轮从栈顶继续
+     */
+    private static final class Job {
+
+        final String name;
+        final File root;
+        final boolean deleteThisPath;
+        final Deque<File> stack = new ArrayDeque<>();
+        /**
+         * 无法清空的目录，不再进入
+         */
+        final Set<File> skipped = new HashSet<>();
+        /**
+         * 只在stepLock内修改，查询时不加stepLock
+         */
+        volatile boolean finished;
+
+        Job(String name, File root, boolean deleteThisPath) {
+            this.name = name;
+            this.root = root;
+            this.deleteThisPath = deleteThisPath;
+            stack.push(root);
+        }
+
+        void step(Run run, long deadline, long byteBudget) {
+            while (!stack.isEmpty()) {
+                if (run.freedBytes >= byteBudget || System.currentTimeMillis() >= deadline) {
+                    return;
+                }
+                File directory = stack.peek();
+                File[] children = directory.listFiles();
+                if (children == null || children.length == 0) {
+                    // 子目录都已清空，删除目录本身
+                    stack.pop();
+                    if (directory == root && !deleteThisPath) {
+                        continue;
+                    }
+                    if ((children == null || !directory.delete()) && directory.exists()) {
+                        // 无法列出或删除，否则上级目录每次都会重新进入它
+                        skipped.add(directory);
+                    }
+                    continue;
+                }
+                int progress = 0;
+                for (File child : children) {
+                    if (System.currentTimeMillis() >= deadline) {
+                        return;
+                    }
+                    if (child.isDirectory()) {
+                        if (!skipped.contains(child)) {
+                            stack.push(child);
+                            progress++;
+                        }
+                    } else if (deleteFile(child, run)) {
+                        progress++;
+                        if (run.freedBytes >= byteBudget) {
+                            return;
+                        }
+                    }
+                }
+                if (progress == 0) {
+                    // 剩下的文件都删除失败，放弃这个目录
+                    skipped.add(stack.pop());
+                }
+            }
+            finished = true;
+        }
+
+        private static boolean deleteFile(File file, Run run) {
+            long length = file.length();
+            if (file.delete()) {
+                run.deletedFiles++;
+                run.freedBytes += length;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 一轮清理的记录
+     */
+    public static final class Run {
+
+        final long startTime;
+        long elapsedMillis;
+        long freedBytes;
+        int deletedFiles;
+        boolean finished;
+        final List<String> completedJobs = new ArrayList<>();
+
+        Run(long startTime) {
+            this.startTime = startTime;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getFreedBytes() {
+            return freedBytes;
+        }
+
+        public int getDeletedFiles() {
+            return deletedFiles;
+        }
+
+        /**
+         * @return 本轮完成的任务名
+         */
+        public List<String> getCompletedJobs() {
+            return completedJobs;
+        }
+
+        /**
+         * @return 本轮结束后所有任务是否都已完成
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public String toString() {
+            return "Run{freed=" + freedBytes + ", files=" + deletedFiles + ", elapsed=" + elapsedMillis
+                    + "ms, completed=" + completedJobs + ", finished=" + finished + "}";
+        }
+    }
+}
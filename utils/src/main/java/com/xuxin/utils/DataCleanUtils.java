@@ -2,12 +2,17 @@ package com.xuxin.utils;
 
 import android.content.Context;
 import android.content.Intent;
+import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Environment;
 import android.text.TextUtils;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * 缓存清理
@@ -130,6 +135,118 @@ public class DataCleanUtils {
         }
     }
 
+    /**
+     * 把本应用内部缓存(/data/data/com.xxx.xxx/cache)裁剪到指定大小，优先删除最久未修改的文件
+     *
+     * @param context 上下文
+     * @param maxSize 保留的最大字节数
+     * @return 删除的字节数
+     */
+    public static long trimInternalCache(Context context, long maxSize) {
+        return trimCache(context.getCacheDir(), maxSize);
+    }
+
+    /**
+     * 把外部cache(/mnt/sdcard/android/data/com.xxx.xxx/cache)裁剪到指定大小，优先删除最久未修改的文件
+     *
+     * @param context 上下文
+     * @param maxSize 保留的最大字节数
+     * @return 删除的字节数
+     */
+    public static long trimExternalCache(Context context, long maxSize) {
+        if (Environment.getExternalStorageState().equals(
+                Environment.MEDIA_MOUNTED)) {
+            return trimCache(context.getExternalCacheDir(), maxSize);
+        }
+        return 0;
+    }
+
+    /**
+     * 把目录裁剪到指定大小，按修改时间从旧到新删除文件，而不是清空整个目录
+     * 系统通常不记录文件的访问时间，需要按访问时间淘汰时请使用{@link DiskCache}
+     *
+     * @param directory 目录
+     * @param maxSize   保留的最大字节数
+     * @return 删除的字节数
+     */
+    public static long trimCache(File directory, long maxSize) {
+        if (directory == null || !directory.isDirectory()) {
+            return 0;
+        }
+        List<File> files = new ArrayList<>();
+        long total = collectFiles(directory, files);
+        if (total <= maxSize) {
+            return 0;
+        }
+        final long[] modified = new long[files.size()];
+        final List<Integer> order = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            modified[i] = files.get(i).lastModified();
+            order.add(i);
+        }
+        // 修改时间只读取一次，排序时不再访问文件系统
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                long l = modified[lhs];
+                long r = modified[rhs];
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        long deleted = 0;
+        for (int i = 0; i < order.size() && total - deleted > maxSize; i++) {
+            File file = files.get(order.get(i));
+            long length = file.length();
+            if (file.delete()) {
+                deleted += length;
+            }
+        }
+        return deleted;
+    }
+
+    private static long collectFiles(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return 0;
+        }
+        long size = 0;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                size += collectFiles(child, files);
+            } else {
+                files.add(child);
+                size += child.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 在后台低优先级线程中分批清除本应用的缓存、数据库、app_webview和自定义路径
+     * 每一轮最多执行50ms或删除8MB，间隔200ms，适合在应用运行期间清理大量文件
+     *
+     * @param context  上下文
+     * @param filepath 文件路径（不定参数，可传多个）
+     * @return 已开始的清理调度器，可以查询每一轮的记录或暂停
+     */
+    public static CleanupScheduler cleanApplicationDataInBackground(Context context, String... filepath) {
+        CleanupScheduler scheduler = new CleanupScheduler(50, 8 * 1024 * 1024, 200);
+        scheduler.addInternalCache(context);
+        if (Environment.getExternalStorageState().equals(
+                Environment.MEDIA_MOUNTED)) {
+            scheduler.addExternalCache(context);
+        }
+        scheduler.addDatabases(context);
+        scheduler.addWebDir(context);
+        if (filepath != null) {
+            for (String filePath : filepath) {
+                scheduler.addCustomPath(filePath);
+            }
+        }
+        scheduler.start();
+        return scheduler;
+    }
+
     /**
      * 删除方法 这里只会删除某个文件夹下的文件，如果传入的directory是个文件，将不做处理 * *
      *
@@ -159,21 +276,8 @@ public class DataCleanUtils {
      * @throws Exception 异常
      */
     public static long getFolderSize(File file) throws Exception {
-        long size = 0;
-        try {
-            File[] fileList = file.listFiles();
-            for (int i = 0; i < fileList.length; i++) {
-                // 如果下面还有文件
-                if (fileList[i].isDirectory()) {
-                    size = size + getFolderSize(fileList[i]);
-                } else {
-                    size = size + fileList[i].length();
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return size;
+        // 多线程遍历，只读取文件长度
+        return DirectoryUsage.scan(file).getTotalBytes();
     }
 
     /**
@@ -185,30 +289,28 @@ public class DataCleanUtils {
      */
     public static void deleteFolderFile(Context context, String filePath, boolean deleteThisPath) {
         if (!TextUtils.isEmpty(filePath)) {
-            try {
-                File file = new File(filePath);
-                if (file.isDirectory()) {// 如果下面还有文件
-                    File files[] = file.listFiles();
-                    for (int i = 0; i < files.length; i++) {
-                        deleteFolderFile(context, files[i].getAbsolutePath(), true);
-                    }
-                }
+            deleteFolder(context, new File(filePath), deleteThisPath);
+        }
+    }
 
-                if (deleteThisPath) {
-                    if (file.isFile()) {// 如果是文件，删除
-                        file.delete();
-                        Intent media = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, Uri.fromFile(file));
-                        context.sendBroadcast(media);
-                    } else {// 目录
-                        if (file.listFiles().length == 0) {// 目录下没有文件或者目录，删除
-                            file.delete();
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    /**
+     * 多线程删除目录下的文件及目录，删除完成后把所有删除的文件一次性通知媒体库，而不是每个文件发一次广播
+     *
+     * @param context        上下文，为null时不通知媒体库
+     * @param file           目录或文件
+     * @param deleteThisPath 是否删除目录(或文件)本身
+     * @return 删除的文件数、目录数、字节数和耗时
+     */
+    public static DeleteResult deleteFolder(Context context, File file, boolean deleteThisPath) {
+        List<String> paths = context != null ? new ArrayList<String>() : null;
+        DeleteResult result = DirectoryDeleter.delete(file, deleteThisPath, DirectoryWalker.DEFAULT_THREADS, paths);
+        if (paths != null && !paths.isEmpty()) {
+            // 扫描已不存在的路径时媒体库会删除对应的记录
+            MediaScannerConnection.scanFile(context.getApplicationContext(),
+                    paths.toArray(new String[paths.size()]), null, null);
+            result.scannedPaths = paths.size();
         }
+        return result;
     }
 
     /**
@@ -267,7 +369,7 @@ public class DataCleanUtils {
     }
 
     /**
-     * 获取缓存大小
+     * 获取缓存大小，每次都完整统计
      *
      * @param file 文件
      * @return 缓存大小
@@ -277,6 +379,20 @@ public class DataCleanUtils {
         return getFormatSize(getFolderSize(file));
     }
 
+    /**
+     * 获取缓存大小，使用增量索引{@link DirectorySizeIndex}，只重新统计修改时间变化的目录
+     * 索引保存在应用目录下，进程重启后第一次调用也只重新统计有变化的目录
+     * 原地追加或改写已有文件不会改变目录的修改时间，结果可能偏旧，
+     * 这种写入之后需要调用DirectorySizeIndex.get(context).invalidate(目录)，需要精确值时使用{@link #getCacheSize(File)}
+     *
+     * @param context 上下文
+     * @param file    文件
+     * @return 缓存大小
+     */
+    public static String getCacheSize(Context context, File file) {
+        return getFormatSize(DirectorySizeIndex.get(context).getSize(file));
+    }
+
     /**
      * 显示Database
      *
@@ -0,0 +1,60 @@
+package com.xuxin.utils;
+
+/**
+ * 删除目录的结果，由{@link DataCleanUtils#deleteFolder}返回
+ */
+public class DeleteResult {
+
+    int deletedFiles;
+    int deletedDirectories;
+    long deletedBytes;
+    int failedCount;
+    int scannedPaths;
+    long elapsedMillis;
+
+    DeleteResult() {
+    }
+
+    public int getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    public int getDeletedDirectories() {
+        return deletedDirectories;
+    }
+
+    /**
+     * @return 删除的文件的总大小(字节)
+     */
+    public long getDeletedBytes() {
+        return deletedBytes;
+    }
+
+    /**
+     * @return 删除失败的文件和目录个数
+     */
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return 通知媒体库更新的路径个数，没有传入Context时为0
+     */
+    public int getScannedPaths() {
+        return scannedPaths;
+    }
+
+    /**
+     * @return 删除耗时，不包括媒体库异步扫描的时间
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "DeleteResult{files=" + deletedFiles + ", directories=" + deletedDirectories
+                + ", bytes=" + deletedBytes + ", failed=" + failedCount + ", scanned=" + scannedPaths
+                + ", elapsed=" + elapsedMillis + "ms}";
+    }
+}
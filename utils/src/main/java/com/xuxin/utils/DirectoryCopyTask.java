@@ -0,0 +1,216 @@
+package com.xuxin.utils;
+
+import android.os.Environment;
+
+import com.xuxin.utils.listener.OnProgressListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并发复制目录，由{@link FileUtils#copyDirectory}创建
+ * 先遍历源目录建立全部子目录，再把文件按从大到小的顺序交给有界线程池复制，大文件先开始，各线程的负载更均衡
+ * 线程数按目标所在的存储决定：内部存储并发读写收益明显，外部存储经过FUSE，可移除的SD卡只用单线程
+ * <pre>
+ * DirectoryCopyTask task = FileUtils.copyDirectory(source, target, listener);
+ * ...
+ * task.cancel(); // 可以在任意线程取消
+ * boolean completed = task.await();
+ * </pre>
+ */
+public class DirectoryCopyTask {
+
+    /**
+     * 单个文件复制时检查取消的间隔，也是进度回调的最小间隔
+     */
+    private static final long CHECK_INTERVAL = 256 * 1024;
+
+    private final File source;
+    private final File target;
+    private final ProgressAggregator progress;
+    private final ThreadPoolExecutor executor;
+    private final List<File> files = new ArrayList<>();
+    private final AtomicInteger copiedFiles = new AtomicInteger();
+    private final AtomicInteger finishedFiles = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile IOException failure;
+    private long totalBytes;
+    private long startTime;
+    private volatile long endTime;
+
+    DirectoryCopyTask(File source, File target, int threads, OnProgressListener listener) {
+        this.source = source;
+        this.target = target;
+        progress = new ProgressAggregator(listener);
+        executor = TaskExecutors.newFixedThreadPool(threads, "FileCopy");
+    }
+
+    /**
+     * 按目标所在的存储选择线程数
+     */
+    static int defaultThreads(File target) {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        File external = Environment.getExternalStorageDirectory();
+        if (external != null && target.getAbsolutePath().startsWith(external.getAbsolutePath())) {
+            return Environment.isExternalStorageRemovable() ? 1 : Math.min(2, cpus);
+        }
+        return Math.max(1, Math.min(4, cpus));
+    }
+
+    /**
+     * 遍历目录并开始复制，遍历在调用线程完成
+     */
+    void start() throws IOException {
+        startTime = System.currentTimeMillis();
+        try {
+            String sourcePath = source.getCanonicalPath() + File.separator;
+            if ((target.getCanonicalPath() + File.separator).startsWith(sourcePath)) {
+                throw new IOException("target " + target + " is inside source " + source);
+            }
+            walk(source, target);
+        } catch (IOException e) {
+            executor.shutdown();
+            throw e;
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.length();
+                long r = rhs.length();
+                return l < r ? 1 : (l == r ? 0 : -1);
+            }
+        });
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        progress.setTotal(totalBytes);
+        if (files.isEmpty()) {
+            endTime = System.currentTimeMillis();
+        }
+        String prefix = source.getPath();
+        for (final File file : files) {
+            final File destination = new File(target, file.getPath().substring(prefix.length()));
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    copy(file, destination);
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    private void walk(File directory, File destination) throws IOException {
+        if (!destination.exists() && !destination.mkdirs()) {
+            throw new IOException("can not create directory " + destination);
+        }
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                walk(child, new File(destination, child.getName()));
+            } else {
+                files.add(child);
+            }
+        }
+    }
+
+    private void copy(File file, File destination) {
+        final long[] last = new long[1];
+        try {
+            if (cancelled) {
+                return;
+            }
+            FileUtils.copyFile(file, destination, new OnProgressListener() {
+                @Override
+                public void onProgress(long current, long total) {
+                    if (cancelled) {
+                        throw new CancellationException();
+                    }
+                    progress.add(current - last[0]);
+                    last[0] = current;
+                }
+            }, CHECK_INTERVAL);
+            copiedFiles.incrementAndGet();
+        } catch (CancellationException e) {
+            destination.delete();
+        } catch (IOException e) {
+            destination.delete();
+            if (failure == null) {
+                failure = e;
+            }
+            cancelled = true;
+        } finally {
+            if (finishedFiles.incrementAndGet() == files.size()) {
+                endTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * 取消复制，正在复制的文件最多再写入256KB后停止，未完成的文件会被删除
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return executor.isTerminated();
+    }
+
+    /**
+     * 等待复制结束
+     *
+     * @return true表示全部复制完成，false表示被取消
+     * @throws IOException          某个文件复制失败，失败后其余文件不再复制
+     * @throws InterruptedException 等待时线程被中断，复制不受影响
+     */
+    public boolean await() throws IOException, InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        if (endTime == 0) {
+            endTime = System.currentTimeMillis();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return !cancelled;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int getTotalFiles() {
+        return files.size();
+    }
+
+    public long getCopiedBytes() {
+        return progress.get();
+    }
+
+    public int getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    /**
+     * @return 从开始遍历到现在(或结束)的平均速度，单位byte/s
+     */
+    public long getBytesPerSecond() {
+        long end = endTime != 0 ? endTime : System.currentTimeMillis();
+        return progress.get() * 1000 / Math.max(1, end - startTime);
+    }
+}
@@ -0,0 +1,113 @@
+package com.xuxin.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多线程删除目录，由{@link DataCleanUtils#deleteFolder}调用
+ * 子目录由{@link DirectoryWalker}交给多个线程同时删除各目录下的文件，最后由调用线程从深到浅删除空目录
+ */
+final class DirectoryDeleter extends DirectoryWalker<File> {
+
+    private final ConcurrentLinkedQueue<File> directories = new ConcurrentLinkedQueue<>();
+    /**
+     * 删除的文件路径，用于通知媒体库，不需要时为null
+     */
+    private final ConcurrentLinkedQueue<String> deletedPaths;
+    private final AtomicInteger deletedFiles = new AtomicInteger();
+    private final AtomicLong deletedBytes = new AtomicLong();
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    private DirectoryDeleter(boolean collectPaths) {
+        deletedPaths = collectPaths ? new ConcurrentLinkedQueue<String>() : null;
+    }
+
+    /**
+     * @param directory      目录
+     * @param deleteThisPath 是否删除目录本身
+     * @param threads        线程数(包括调用线程)
+     * @param paths          不为null时放入删除的文件路径
+     */
+    static DeleteResult delete(File directory, boolean deleteThisPath, int threads, List<String> paths) {
+        long start = System.currentTimeMillis();
+        DirectoryDeleter deleter = new DirectoryDeleter(paths != null);
+        DeleteResult result = new DeleteResult();
+        if (directory.isFile()) {
+            if (deleteThisPath) {
+                deleter.deleteFile(directory);
+            }
+        } else if (directory.isDirectory()) {
+            deleter.push(directory);
+            deleter.walk(threads);
+            result.deletedDirectories = deleter.deleteDirectories(directory, deleteThisPath);
+        }
+        result.deletedFiles = deleter.deletedFiles.get();
+        result.deletedBytes = deleter.deletedBytes.get();
+        result.failedCount = deleter.failedCount.get();
+        if (paths != null) {
+            paths.addAll(deleter.deletedPaths);
+        }
+        result.elapsedMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    @Override
+    void visit(File directory) {
+        directories.add(directory);
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                push(child);
+            } else {
+                deleteFile(child);
+            }
+        }
+    }
+
+    private void deleteFile(File file) {
+        long length = file.length();
+        if (file.delete()) {
+            deletedFiles.incrementAndGet();
+            deletedBytes.addAndGet(length);
+            if (deletedPaths != null) {
+                deletedPaths.add(file.getAbsolutePath());
+            }
+        } else {
+            failedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 子目录的路径一定比父目录长，按路径长度从长到短删除即可保证先删子目录
+     */
+    private int deleteDirectories(File root, boolean deleteThisPath) {
+        List<File> list = new ArrayList<>(directories);
+        Collections.sort(list, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return rhs.getPath().length() - lhs.getPath().length();
+            }
+        });
+        int deleted = 0;
+        for (File directory : list) {
+            if (!deleteThisPath && directory.equals(root)) {
+                continue;
+            }
+            if (directory.delete()) {
+                deleted++;
+            } else {
+                failedCount.incrementAndGet();
+            }
+        }
+        return deleted;
+    }
+}
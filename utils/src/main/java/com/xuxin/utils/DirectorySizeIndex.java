@@ -0,0 +1,290 @@
+package com.xuxin.utils;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 增量的目录大小索引
+ * 每个目录记录修改时间、直接包含的文件大小和子目录列表。目录下增删、重命名文件时目录的修改时间会变化，
+ * 再次统计时只对修改时间变化的目录重新listFiles，其余目录只读取一次修改时间，
+ * 重复统计的代价从与文件数成正比降到与目录数成正比，大部分目录没有变化时非常快
+ * <p>
+ * 原地改写已有文件不会改变目录的修改时间，这种情况需要调用{@link #invalidate(File)}
+ * 修改时间与统计时间过于接近的目录(文件系统的时间精度可能只有秒级)下次仍会重新统计
+ * <pre>
+ * long size = DirectorySizeIndex.get(context).getSize(context.getCacheDir());
+ * </pre>
+ */
+public class DirectorySizeIndex {
+
+    private static final int MAGIC = 0x58445349;
+    private static final int VERSION = 1;
+    /**
+     * 修改时间在统计时间之前2秒内的目录认为不可靠
+     */
+    private static final long RACY_WINDOW = 2000;
+
+    private static volatile DirectorySizeIndex defaultIndex;
+
+    private final File indexFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded;
+    private boolean dirty;
+    private int rescanned;
+
+    /**
+     * @param indexFile 索引保存的文件，为null时只保存在内存中
+     */
+    public DirectorySizeIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * 应用内共享的索引，保存在/data/data/包名/size_index
+     *
+     * @param context 上下文
+     * @return 索引
+     */
+    public static DirectorySizeIndex get(Context context) {
+        if (defaultIndex == null) {
+            synchronized (DirectorySizeIndex.class) {
+                if (defaultIndex == null) {
+                    defaultIndex = new DirectorySizeIndex(
+                            new File(context.getFilesDir().getParentFile(), "size_index"));
+                }
+            }
+        }
+        return defaultIndex;
+    }
+
+    /**
+     * 获取目录的总大小，只重新统计有变化的目录，有变化时保存索引
+     *
+     * @param directory 目录，也可以是文件
+     * @return 总大小(字节)
+     */
+    public synchronized long getSize(File directory) {
+        if (!directory.isDirectory()) {
+            return directory.length();
+        }
+        load();
+        rescanned = 0;
+        long size = size(directory.getAbsoluteFile(), System.currentTimeMillis());
+        if (dirty) {
+            save();
+        }
+        return size;
+    }
+
+    /**
+     * @return 上一次{@link #getSize}重新统计的目录个数
+     */
+    public synchronized int getRescannedCount() {
+        return rescanned;
+    }
+
+    /**
+     * 使目录及其子目录的索引失效，下次重新统计，用于目录中的文件被原地改写的情况
+     *
+     * @param directory 目录
+     */
+    public synchronized void invalidate(File directory) {
+        load();
+        remove(directory.getAbsolutePath());
+        dirty = true;
+    }
+
+    /**
+     * 清空索引
+     */
+    public synchronized void clear() {
+        entries.clear();
+        loaded = true;
+        dirty = false;
+        if (indexFile != null) {
+            indexFile.delete();
+        }
+    }
+
+    private long size(File directory, long now) {
+        String path = directory.getPath();
+        long modified = directory.lastModified();
+        Entry entry = entries.get(path);
+        if (entry == null || entry.modified != modified || entry.indexed - entry.modified < RACY_WINDOW) {
+            entry = rescan(directory, entry, modified, now);
+            if (entry == null) {
+                return 0;
+            }
+        }
+        long size = entry.directBytes;
+        for (String child : entry.children) {
+            size += size(new File(directory, child), now);
+        }
+        return size;
+    }
+
+    private Entry rescan(File directory, Entry old, long modified, long now) {
+        rescanned++;
+        dirty = true;
+        String path = directory.getPath();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            remove(path);
+            return null;
+        }
+        Entry entry = new Entry();
+        entry.modified = modified;
+        entry.indexed = now;
+        String[] names = new String[files.length];
+        int count = 0;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                names[count++] = file.getName();
+            } else {
+                entry.directBytes += file.length();
+            }
+        }
+        entry.children = Arrays.copyOf(names, count);
+        if (old != null && old.children.length > 0) {
+            // 已删除的子目录不再需要索引
+            Set<String> children = new HashSet<>(Arrays.asList(entry.children));
+            for (String child : old.children) {
+                if (!children.contains(child)) {
+                    remove(path + File.separator + child);
+                }
+            }
+        }
+        entries.put(path, entry);
+        return entry;
+    }
+
+    private void remove(String path) {
+        Entry entry = entries.remove(path);
+        if (entry != null) {
+            for (String child : entry.children) {
+                remove(path + File.separator + child);
+            }
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (indexFile == null || !indexFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 64 * 1024));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                Entry entry = new Entry();
+                entry.modified = in.readLong();
+                entry.indexed = in.readLong();
+                entry.directBytes = in.readLong();
+                entry.children = new String[in.readInt()];
+                for (int j = 0; j < entry.children.length; j++) {
+                    entry.children[j] = in.readUTF();
+                }
+                entries.put(path, entry);
+            }
+        } catch (IOException e) {
+            // 索引损坏时重新统计
+            entries.clear();
+            e.printStackTrace();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void save() {
+        dirty = false;
+        if (indexFile == null) {
+            return;
+        }
+        File parent = indexFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                out.writeUTF(item.getKey());
+                out.writeLong(entry.modified);
+                out.writeLong(entry.indexed);
+                out.writeLong(entry.directBytes);
+                out.writeInt(entry.children.length);
+                for (String child : entry.children) {
+                    out.writeUTF(child);
+                }
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(indexFile)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个目录的索引
+     */
+    private static final class Entry {
+
+        long modified;
+        /**
+         * 统计的时间
+         */
+        long indexed;
+        /**
+         * 直接包含的文件的大小，不含子目录
+         */
+        long directBytes;
+        /**
+         * 子目录的名字
+         */
+        String[] children;
+    }
+}
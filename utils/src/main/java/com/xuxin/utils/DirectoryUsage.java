@@ -0,0 +1,222 @@
+package com.xuxin.utils;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 目录占用空间的统计结果，由{@link #scan}计算
+ * 只使用File.length()，不打开文件；子目录由{@link DirectoryWalker}交给多个线程同时遍历，调用线程也参与遍历
+ * 可以限制统计的字节数和时间，超出时提前结束，{@link #isComplete()}返回false
+ * <pre>
+ * DirectoryUsage usage = DirectoryUsage.scan(context.getCacheDir());
+ * usage.getTotalBytes();
+ * usage.getChildren(); // 每个一级子目录的大小
+ * </pre>
+ */
+public class DirectoryUsage {
+
+    /**
+     * 不限制字节数或时间
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final File directory;
+    private final long totalBytes;
+    private final long directBytes;
+    private final int fileCount;
+    private final int directoryCount;
+    private final boolean complete;
+    private final long elapsedMillis;
+    private final Map<String, Long> children;
+
+    private DirectoryUsage(File directory, long totalBytes, long directBytes, int fileCount, int directoryCount,
+                           boolean complete, long elapsedMillis, Map<String, Long> children) {
+        this.directory = directory;
+        this.totalBytes = totalBytes;
+        this.directBytes = directBytes;
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.complete = complete;
+        this.elapsedMillis = elapsedMillis;
+        this.children = children;
+    }
+
+    /**
+     * 统计目录的大小，不限制字节数和时间
+     *
+     * @param directory 目录，也可以是文件
+     * @return 统计结果
+     */
+    public static DirectoryUsage scan(File directory) {
+        return scan(directory, DirectoryWalker.DEFAULT_THREADS, UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * 统计目录的大小
+     *
+     * @param directory    目录，也可以是文件
+     * @param threads      遍历的线程数(包括调用线程)
+     * @param byteBudget   统计到的大小达到该值时停止，例如只需要知道缓存是否超过上限时，{@link #UNLIMITED}表示不限制
+     * @param timeBudgetMs 耗时超过该值时停止，{@link #UNLIMITED}表示不限制
+     * @return 统计结果，提前停止时{@link #isComplete()}为false，大小是已统计部分的大小
+     */
+    public static DirectoryUsage scan(File directory, int threads, long byteBudget, long timeBudgetMs) {
+        long start = System.currentTimeMillis();
+        if (!directory.isDirectory()) {
+            long length = directory.length();
+            return new DirectoryUsage(directory, length, length, directory.exists() ? 1 : 0, 0, true,
+                    System.currentTimeMillis() - start, Collections.<String, Long>emptyMap());
+        }
+        Scan scan = new Scan(byteBudget, timeBudgetMs == UNLIMITED ? UNLIMITED : start + timeBudgetMs);
+        File[] entries = directory.listFiles();
+        String[] names = new String[0];
+        if (entries != null) {
+            int subdirectories = 0;
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    subdirectories++;
+                }
+            }
+            names = new String[subdirectories];
+            scan.buckets = new AtomicLongArray(subdirectories + 1);
+            int bucket = 0;
+            long direct = 0;
+            for (File entry : entries) {
+                if (entry.isDirectory()) {
+                    names[bucket] = entry.getName();
+                    scan.push(new Node(entry, bucket++));
+                } else {
+                    direct += entry.length();
+                    scan.files.incrementAndGet();
+                }
+            }
+            scan.add(subdirectories, direct);
+        } else {
+            scan.buckets = new AtomicLongArray(1);
+        }
+        scan.walk(names.length == 0 ? 1 : threads);
+
+        Map<String, Long> children = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            children.put(names[i], scan.buckets.get(i));
+        }
+        return new DirectoryUsage(directory, scan.total.get(), scan.buckets.get(names.length), scan.files.get(),
+                scan.directories.get(), !scan.isStopped(), System.currentTimeMillis() - start,
+                Collections.unmodifiableMap(children));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return 总大小(字节)
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return 直接位于该目录下的文件(不含子目录)的大小
+     */
+    public long getDirectBytes() {
+        return directBytes;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return 子目录的个数(所有层级，不含该目录本身)
+     */
+    public int getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * @return false表示达到了字节数或时间限制，提前停止
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return 每个一级子目录的名字和大小，顺序与listFiles相同
+     */
+    public Map<String, Long> getChildren() {
+        return children;
+    }
+
+    /**
+     * 待遍历的目录，bucket是它所属的一级子目录的序号
+     */
+    private static final class Node {
+
+        final File file;
+        final int bucket;
+
+        Node(File file, int bucket) {
+            this.file = file;
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * 一次统计的共享状态
+     */
+    private static final class Scan extends DirectoryWalker<Node> {
+
+        final AtomicLong total = new AtomicLong();
+        final AtomicInteger files = new AtomicInteger();
+        final AtomicInteger directories = new AtomicInteger();
+        final long byteBudget;
+        final long deadline;
+        AtomicLongArray buckets;
+
+        Scan(long byteBudget, long deadline) {
+            this.byteBudget = byteBudget;
+            this.deadline = deadline;
+        }
+
+        void add(int bucketIndex, long bytes) {
+            if (bytes == 0) {
+                return;
+            }
+            buckets.addAndGet(bucketIndex, bytes);
+            if (total.addAndGet(bytes) >= byteBudget) {
+                stop();
+            }
+        }
+
+        @Override
+        void visit(Node node) {
+            directories.incrementAndGet();
+            File[] entries = node.file.listFiles();
+            if (entries != null) {
+                long bytes = 0;
+                for (File entry : entries) {
+                    if (entry.isDirectory()) {
+                        push(new Node(entry, node.bucket));
+                    } else {
+                        bytes += entry.length();
+                        files.incrementAndGet();
+                    }
+                }
+                add(node.bucket, bytes);
+            }
+            if (deadline != UNLIMITED && System.currentTimeMillis() > deadline) {
+                stop();
+            }
+        }
+    }
+}
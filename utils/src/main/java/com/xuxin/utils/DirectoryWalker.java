@@ -0,0 +1,144 @@
+package com.xuxin.utils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多线程遍历目录树的公共部分，{@link DirectoryUsage}和{@link DirectoryDeleter}使用
+ * 待处理的节点放在共享队列中，调用线程和线程池中的线程同时取出处理，处理时可以继续{@link #push}子节点；
+ * 队列为空时线程在锁上等待，有新节点或全部处理完时被唤醒，不会轮询
+ * <pre>
+ * walker.push(root);
+ * walker.walk(threads); // 返回时所有节点都已处理完(或已停止)
+ * </pre>
+ *
+ * @param <T> 节点类型
+ */
+abstract class DirectoryWalker<T> implements Runnable {
+
+    static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    /**
+     * 遍历线程在多次遍历间复用，空闲10秒后退出
+     */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(0, 16, 10, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "DirectoryWalker-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+    /**
+     * 已入队但还没处理完的节点数，为0时结束
+     */
+    private int pending;
+    private int running;
+    private volatile boolean stopped;
+
+    /**
+     * 处理一个节点，在遍历线程中调用，需要线程安全
+     */
+    abstract void visit(T node);
+
+    /**
+     * 添加一个待处理的节点
+     */
+    final synchronized void push(T node) {
+        queue.add(node);
+        pending++;
+        notify();
+    }
+
+    /**
+     * 停止遍历，正在处理的节点处理完后各线程退出，队列中剩余的节点不再处理
+     */
+    final void stop() {
+        stopped = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    final boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * 在调用线程和线程池中遍历，返回时所有遍历线程都已退出
+     *
+     * @param threads 线程数(包括调用线程)
+     */
+    final void walk(int threads) {
+        for (int i = 0; i < threads - 1; i++) {
+            try {
+                EXECUTOR.execute(this);
+            } catch (RejectedExecutionException e) {
+                // 线程数已达上限，由其他线程完成
+                break;
+            }
+        }
+        run();
+        awaitWorkers();
+    }
+
+    @Override
+    public final void run() {
+        synchronized (this) {
+            running++;
+        }
+        try {
+            while (true) {
+                T node;
+                synchronized (this) {
+                    while (queue.isEmpty() && pending > 0 && !stopped) {
+                        wait();
+                    }
+                    if (stopped || queue.isEmpty()) {
+                        return;
+                    }
+                    node = queue.poll();
+                }
+                try {
+                    visit(node);
+                } finally {
+                    synchronized (this) {
+                        if (--pending == 0) {
+                            notifyAll();
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            stop();
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                running--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 调用线程遍历结束后等待其他线程处理完手上的节点
+     */
+    private synchronized void awaitWorkers() {
+        while (running > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,582 @@
+package com.xuxin.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 有容量上限的磁盘缓存
+ * 每个key对应目录下的一个文件(文件名是key的MD5)，目录下的journal文件记录每个文件的大小、最近访问时间和访问次数，
+ * 写入后总大小超过上限时按LRU(最久未访问)或LFU(访问次数最少)淘汰，不需要整个目录清空
+ * 打开时目录中不在journal里的文件(例如之前直接写入的缓存)也会纳入管理，以修改时间作为访问时间
+ * <p>
+ * journal每行一条记录，追加写入，行数过多时压缩:
+ * <pre>
+ * P 文件名 大小 访问时间 访问次数   写入
+ * R 文件名 访问时间              读取
+ * D 文件名                      删除
+ * </pre>
+ * <pre>
+ * DiskCache cache = DiskCache.open(new File(context.getCacheDir(), "images"), 50 * 1024 * 1024);
+ * cache.put(url, bytes);
+ * File file = cache.get(url);
+ * </pre>
+ */
+public class DiskCache {
+
+    /**
+     * 淘汰最久未访问的文件
+     */
+    public static final int POLICY_LRU = 0;
+    /**
+     * 淘汰访问次数最少的文件，次数相同时淘汰最久未访问的
+     */
+    public static final int POLICY_LFU = 1;
+
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TEMP = "journal.tmp";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String HEADER = "com.xuxin.utils.DiskCache 1";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * journal行数超过该值且超过文件数的2倍时压缩
+     */
+    private static final int COMPACT_THRESHOLD = 2000;
+
+    private final File directory;
+    private final int policy;
+    private final File journalFile;
+    /**
+     * 按访问顺序排列，最久未访问的在前
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxSize;
+    private long size;
+    private Writer journal;
+    private int journalLines;
+    private int tempCount;
+
+    private DiskCache(File directory, long maxSize, int policy) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.policy = policy;
+        journalFile = new File(directory, JOURNAL);
+    }
+
+    /**
+     * 打开LRU缓存
+     *
+     * @param directory 缓存目录，只能由一个DiskCache使用
+     * @param maxSize   总大小上限(字节)
+     * @return 缓存
+     * @throws IOException 目录无法创建或journal无法写入
+     */
+    public static DiskCache open(File directory, long maxSize) throws IOException {
+        return open(directory, maxSize, POLICY_LRU);
+    }
+
+    /**
+     * 打开缓存
+     *
+     * @param directory 缓存目录，只能由一个DiskCache使用
+     * @param maxSize   总大小上限(字节)
+     * @param policy    {@link #POLICY_LRU}或{@link #POLICY_LFU}
+     * @return 缓存
+     * @throws IOException 目录无法创建或journal无法写入
+     */
+    public static DiskCache open(File directory, long maxSize, int policy) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("can not create " + directory);
+        }
+        DiskCache cache = new DiskCache(directory, maxSize, policy);
+        synchronized (cache) {
+            cache.readJournal();
+            cache.reconcile();
+            cache.rebuildJournal();
+            cache.trimToSize(maxSize);
+        }
+        return cache;
+    }
+
+    /**
+     * 获取缓存文件并记录一次访问
+     * 返回的只是路径，之后其他线程的put、remove或淘汰可能删除或替换这个文件，读取时需要处理FileNotFoundException；
+     * 需要保证读到完整内容时使用{@link #getInputStream(String)}
+     *
+     * @param key 缓存的key
+     * @return 缓存文件，不存在时返回null
+     */
+    public synchronized File get(String key) {
+        String name = fileName(key);
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        File file = new File(directory, name);
+        if (!file.exists()) {
+            // 被外部删除
+            entries.remove(name);
+            size -= entry.size;
+            appendJournal("D " + name);
+            return null;
+        }
+        entry.accessTime = System.currentTimeMillis();
+        entry.hits++;
+        appendJournal("R " + name + " " + entry.accessTime);
+        compactIfNeeded();
+        return file;
+    }
+
+    /**
+     * 获取缓存内容并记录一次访问
+     * 文件在持有锁时打开，之后即使被淘汰或替换，已打开的流依然读到打开时的完整内容
+     *
+     * @param key 缓存的key
+     * @return 输入流，使用后需要关闭；不存在时返回null
+     */
+    public synchronized InputStream getInputStream(String key) {
+        File file = get(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return new FileInputStream(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(fileName(key));
+    }
+
+    /**
+     * 写入缓存，数据先写入临时文件，完成后替换旧文件，写入期间不影响其他key的读写
+     *
+     * @param key  缓存的key
+     * @param data 内容
+     * @return 缓存文件，内容超过容量上限时不缓存(该key原有的缓存也会删除)并返回null
+     * @throws IOException 写入出错，旧的缓存文件保留
+     */
+    public File put(String key, byte[] data) throws IOException {
+        File temp = newTempFile();
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(data);
+        } catch (IOException e) {
+            out.close();
+            temp.delete();
+            throw e;
+        }
+        out.close();
+        return commit(key, temp);
+    }
+
+    /**
+     * 写入缓存，不会关闭输入流
+     *
+     * @param key 缓存的key
+     * @param in  内容
+     * @return 缓存文件，内容超过容量上限时不缓存(该key原有的缓存也会删除)并返回null
+     * @throws IOException 读取或写入出错，旧的缓存文件保留
+     */
+    public File put(String key, InputStream in) throws IOException {
+        File temp = newTempFile();
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            out.close();
+            temp.delete();
+            throw e;
+        }
+        out.close();
+        return commit(key, temp);
+    }
+
+    /**
+     * 把文件复制到缓存中
+     *
+     * @param key    缓存的key
+     * @param source 源文件
+     * @return 缓存文件，内容超过容量上限时不缓存(该key原有的缓存也会删除)并返回null
+     * @throws IOException 复制出错，旧的缓存文件保留
+     */
+    public File put(String key, File source) throws IOException {
+        File temp = newTempFile();
+        try {
+            FileUtils.copyFile(source, temp, null, FileUtils.DEFAULT_PROGRESS_INTERVAL);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        return commit(key, temp);
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key 缓存的key
+     * @return 缓存存在并已删除时返回true
+     */
+    public synchronized boolean remove(String key) {
+        return removeEntry(fileName(key));
+    }
+
+    /**
+     * 删除全部缓存
+     */
+    public synchronized void clear() {
+        List<String> names = new ArrayList<>(entries.keySet());
+        for (String name : names) {
+            removeEntry(name);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * 淘汰文件直到总大小不超过maxSize
+     *
+     * @param maxSize 目标大小
+     * @return 淘汰的文件数
+     */
+    public synchronized int trimToSize(long maxSize) {
+        if (size <= maxSize) {
+            return 0;
+        }
+        List<String> victims = new ArrayList<>();
+        if (policy == POLICY_LFU) {
+            List<Map.Entry<String, Entry>> sorted = new ArrayList<>(entries.entrySet());
+            Collections.sort(sorted, new Comparator<Map.Entry<String, Entry>>() {
+                @Override
+                public int compare(Map.Entry<String, Entry> lhs, Map.Entry<String, Entry> rhs) {
+                    Entry l = lhs.getValue();
+                    Entry r = rhs.getValue();
+                    if (l.hits != r.hits) {
+                        return l.hits < r.hits ? -1 : 1;
+                    }
+                    return l.accessTime < r.accessTime ? -1 : (l.accessTime == r.accessTime ? 0 : 1);
+                }
+            });
+            long remaining = size;
+            for (Map.Entry<String, Entry> item : sorted) {
+                if (remaining <= maxSize) {
+                    break;
+                }
+                victims.add(item.getKey());
+                remaining -= item.getValue().size;
+            }
+        } else {
+            long remaining = size;
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (remaining > maxSize && iterator.hasNext()) {
+                Map.Entry<String, Entry> item = iterator.next();
+                victims.add(item.getKey());
+                remaining -= item.getValue().size;
+            }
+        }
+        for (String name : victims) {
+            removeEntry(name);
+        }
+        compactIfNeeded();
+        flushJournal();
+        return victims.size();
+    }
+
+    /**
+     * @return 当前总大小(字节)
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 修改容量上限，变小时立即淘汰
+     *
+     * @param maxSize 总大小上限(字节)
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 把缓冲的访问记录写入journal
+     */
+    public synchronized void flush() {
+        flushJournal();
+    }
+
+    /**
+     * 写入访问记录并关闭journal，之后不能再使用
+     */
+    public synchronized void close() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        journal = null;
+    }
+
+    private synchronized File newTempFile() {
+        return new File(directory, "put-" + (tempCount++) + "-" + System.nanoTime() + TEMP_SUFFIX);
+    }
+
+    private synchronized File commit(String key, File temp) throws IOException {
+        String name = fileName(key);
+        long length = temp.length();
+        if (length > maxSize) {
+            // 放不下，插入后也会被立即淘汰
+            temp.delete();
+            removeEntry(name);
+            compactIfNeeded();
+            flushJournal();
+            return null;
+        }
+        File file = new File(directory, name);
+        // 旧文件会被替换，先不参与淘汰；淘汰在插入之前进行，新写入的文件不会被淘汰
+        Entry entry = entries.remove(name);
+        if (entry != null) {
+            size -= entry.size;
+        }
+        trimToSize(maxSize - length);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            if (entry != null) {
+                entries.put(name, entry);
+                size += entry.size;
+            }
+            throw new IOException("can not rename " + temp + " to " + file);
+        }
+        if (entry == null) {
+            entry = new Entry();
+        }
+        entries.put(name, entry);
+        entry.size = length;
+        entry.accessTime = System.currentTimeMillis();
+        size += entry.size;
+        appendJournal("P " + name + " " + entry.size + " " + entry.accessTime + " " + entry.hits);
+        flushJournal();
+        compactIfNeeded();
+        return file;
+    }
+
+    private boolean removeEntry(String name) {
+        Entry entry = entries.remove(name);
+        if (entry == null) {
+            return false;
+        }
+        File file = new File(directory, name);
+        if (!file.delete() && file.exists()) {
+            // 删除失败，保留记录
+            entries.put(name, entry);
+            return false;
+        }
+        size -= entry.size;
+        appendJournal("D " + name);
+        return true;
+    }
+
+    private static String fileName(String key) {
+        return EncryptUtils.getMD5(key.getBytes(UTF_8)).toLowerCase();
+    }
+
+    private void readJournal() {
+        if (!journalFile.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), UTF_8), 64 * 1024);
+            if (!HEADER.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                try {
+                    if ("P".equals(parts[0]) && parts.length == 5) {
+                        Entry entry = new Entry();
+                        entry.size = Long.parseLong(parts[2]);
+                        entry.accessTime = Long.parseLong(parts[3]);
+                        entry.hits = Integer.parseInt(parts[4]);
+                        entries.put(parts[1], entry);
+                    } else if ("R".equals(parts[0]) && parts.length == 3) {
+                        Entry entry = entries.get(parts[1]);
+                        if (entry != null) {
+                            entry.accessTime = Long.parseLong(parts[2]);
+                            entry.hits++;
+                        }
+                    } else if ("D".equals(parts[0]) && parts.length == 2) {
+                        entries.remove(parts[1]);
+                    }
+                } catch (NumberFormatException e) {
+                    // 进程崩溃时最后一行可能不完整
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 使记录与目录中实际的文件一致
+     */
+    private void reconcile() {
+        File[] files = directory.listFiles();
+        Map<String, Entry> existing = new LinkedHashMap<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!file.isFile() || JOURNAL.equals(name) || JOURNAL_TEMP.equals(name)) {
+                    continue;
+                }
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // 上次写入未完成
+                    file.delete();
+                    continue;
+                }
+                Entry entry = entries.get(name);
+                if (entry == null) {
+                    entry = new Entry();
+                    entry.accessTime = file.lastModified();
+                }
+                entry.size = file.length();
+                existing.put(name, entry);
+            }
+        }
+        List<Map.Entry<String, Entry>> sorted = new ArrayList<>(existing.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Entry>>() {
+            @Override
+            public int compare(Map.Entry<String, Entry> lhs, Map.Entry<String, Entry> rhs) {
+                long l = lhs.getValue().accessTime;
+                long r = rhs.getValue().accessTime;
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        entries.clear();
+        size = 0;
+        for (Map.Entry<String, Entry> item : sorted) {
+            entries.put(item.getKey(), item.getValue());
+            size += item.getValue().size;
+        }
+    }
+
+    /**
+     * 按当前记录重写journal
+     */
+    private void rebuildJournal() throws IOException {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        File temp = new File(directory, JOURNAL_TEMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF_8), 64 * 1024);
+        try {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                writer.write("P " + item.getKey() + " " + entry.size + " " + entry.accessTime + " " + entry.hits + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (!temp.renameTo(journalFile)) {
+            throw new IOException("can not rename " + temp + " to " + journalFile);
+        }
+        journalLines = entries.size();
+        journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), UTF_8), 8192);
+    }
+
+    private void appendJournal(String line) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.write(line);
+            journal.write('\n');
+            journalLines++;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flushJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (journal != null && journalLines > COMPACT_THRESHOLD && journalLines > entries.size() * 2) {
+            try {
+                rebuildJournal();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 一个缓存文件的记录
+     */
+    private static final class Entry {
+
+        long size;
+        long accessTime;
+        int hits;
+    }
+}
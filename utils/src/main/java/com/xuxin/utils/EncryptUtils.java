@@ -1,13 +1,15 @@
 package com.xuxin.utils;
 
+import com.xuxin.utils.listener.OnProgressListener;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
@@ -22,6 +24,23 @@ import static com.xuxin.utils.ConvertUtils.bytes2HexString;
  */
 public class EncryptUtils {
 
+    public static final String MD5 = "MD5";
+    public static final String SHA1 = "SHA-1";
+    public static final String SHA256 = "SHA-256";
+    public static final String SHA512 = "SHA-512";
+
+    /**
+     * 计算文件摘要时每次读取的大小
+     */
+    private static final int DIGEST_BUFFER_SIZE = 256 * 1024;
+    private static final int DIGEST_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final ThreadLocal<byte[]> DIGEST_BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[DIGEST_BUFFER_SIZE];
+        }
+    };
+
     private EncryptUtils() {
         throw new UnsupportedOperationException("u can't fuck me...");
     }
@@ -297,25 +316,143 @@ public class EncryptUtils {
      * @return 文件的MD5校验码
      */
     public static String getMD5File(File file) {
-        FileInputStream in = null;
+        return getFileDigest(file, MD5);
+    }
+
+    /**
+     * 获取文件的SHA1校验码
+     *
+     * @param file 文件
+     * @return 文件的SHA1校验码
+     */
+    public static String getSHA1File(File file) {
+        return getFileDigest(file, SHA1);
+    }
+
+    /**
+     * 获取文件的SHA256校验码
+     *
+     * @param filePath 文件路径
+     * @return 文件的SHA256校验码
+     */
+    public static String getSHA256File(String filePath) {
+        return getSHA256File(new File(filePath));
+    }
+
+    /**
+     * 获取文件的SHA256校验码
+     *
+     * @param file 文件
+     * @return 文件的SHA256校验码
+     */
+    public static String getSHA256File(File file) {
+        return getFileDigest(file, SHA256);
+    }
+
+    /**
+     * 获取文件的SHA512校验码
+     *
+     * @param file 文件
+     * @return 文件的SHA512校验码
+     */
+    public static String getSHA512File(File file) {
+        return getFileDigest(file, SHA512);
+    }
+
+    /**
+     * 获取文件的校验码
+     *
+     * @param file      文件
+     * @param algorithm 摘要算法，如{@link #MD5}、{@link #SHA256}
+     * @return 大写十六进制的校验码，读取失败时返回""
+     */
+    public static String getFileDigest(File file, String algorithm) {
         try {
-            in = new FileInputStream(file);
-            FileChannel channel = in.getChannel();
-            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, file.length());
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            md.update(buffer);
-            return bytes2HexString(md.digest());
-        } catch (NoSuchAlgorithmException | IOException e) {
+            return bytes2HexString(digestFile(file, algorithm, null));
+        } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException ignored) {
+        }
+        return "";
+    }
+
+    /**
+     * 分块读取计算文件的摘要，内存占用固定，不受文件大小限制
+     * 在listener中抛出{@link CancellationException}可以取消计算，异常会传给调用方
+     *
+     * @param file      文件
+     * @param algorithm 摘要算法，如{@link #MD5}、{@link #SHA256}
+     * @param listener  进度回调，可以为null，每读取{@link FileUtils#DEFAULT_PROGRESS_INTERVAL}字节和结束时回调
+     * @return 摘要
+     * @throws IOException 文件读取出错
+     */
+    public static byte[] digestFile(File file, String algorithm, OnProgressListener listener) throws IOException {
+        return digestFile(file, algorithm, listener, FileUtils.DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    /**
+     * @param progressInterval 两次回调之间至少读取的字节数，读取结束时总会回调一次
+     * @see #digestFile(File, String, OnProgressListener)
+     */
+    static byte[] digestFile(File file, String algorithm, OnProgressListener listener, long progressInterval)
+            throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+        byte[] buffer = DIGEST_BUFFER.get();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            long total = in.getChannel().size();
+            long current = 0;
+            long reported = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+                current += read;
+                if (listener != null && current - reported >= progressInterval) {
+                    reported = current;
+                    listener.onProgress(current, total);
                 }
             }
+            if (listener != null && (reported != current || current == 0)) {
+                listener.onProgress(current, total);
+            }
+        } finally {
+            in.close();
         }
-        return "";
+        return md.digest();
+    }
+
+    /**
+     * 并发计算多个文件的摘要
+     *
+     * @see #digestFiles(List, String, int, OnProgressListener)
+     */
+    public static FileDigestTask digestFiles(List<File> files, String algorithm, OnProgressListener listener) {
+        return digestFiles(files, algorithm, DIGEST_THREADS, listener);
+    }
+
+    /**
+     * 并发计算多个文件的摘要
+     *
+     * @param files     文件
+     * @param algorithm 摘要算法，如{@link #MD5}、{@link #SHA256}
+     * @param threads   线程数
+     * @param listener  总进度回调，可以为null，在计算线程中回调
+     * @return 已开始的任务，用于等待、取消和获取结果
+     */
+    public static FileDigestTask digestFiles(List<File> files, String algorithm, int threads,
+                                             OnProgressListener listener) {
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+        FileDigestTask task = new FileDigestTask(files, algorithm, Math.max(1, threads), listener);
+        task.start();
+        return task;
     }
 
     /*********************** DES加密相关 ***********************/
@@ -0,0 +1,197 @@
+package com.xuxin.utils;
+
+import com.xuxin.utils.listener.OnProgressListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.xuxin.utils.ConvertUtils.bytes2HexString;
+
+/**
+ * 并发计算多个文件的摘要，由{@link EncryptUtils#digestFiles}创建
+ * 文件按从大到小的顺序交给线程池，每个文件由一个线程分块读取计算，多个文件同时计算可以用满多个核
+ * <pre>
+ * FileDigestTask task = EncryptUtils.digestFiles(files, EncryptUtils.SHA256, listener);
+ * ...
+ * task.cancel(); // 可以在任意线程取消
+ * if (task.await()) {
+ *     String hex = task.getHex(file);
+ * }
+ * </pre>
+ */
+public class FileDigestTask {
+
+    /**
+     * 单个文件计算时检查取消的间隔，等于{@link EncryptUtils#digestFile}每次读取的块大小
+     */
+    private static final long CHECK_INTERVAL = 256 * 1024;
+
+    private final List<File> files;
+    private final String algorithm;
+    private final ProgressAggregator progress;
+    private final ThreadPoolExecutor executor;
+    private final Map<File, byte[]> digests = new ConcurrentHashMap<>();
+    private final AtomicInteger finishedFiles = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile IOException failure;
+    private long totalBytes;
+    private long startTime;
+    private volatile long endTime;
+
+    FileDigestTask(List<File> files, String algorithm, int threads, OnProgressListener listener) {
+        this.files = new ArrayList<>(files);
+        this.algorithm = algorithm;
+        progress = new ProgressAggregator(listener);
+        executor = TaskExecutors.newFixedThreadPool(threads, "FileDigest");
+    }
+
+    void start() {
+        startTime = System.currentTimeMillis();
+        final Map<File, Long> lengths = new HashMap<>();
+        for (File file : files) {
+            long length = file.length();
+            lengths.put(file, length);
+            totalBytes += length;
+        }
+        progress.setTotal(totalBytes);
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lengths.get(lhs);
+                long r = lengths.get(rhs);
+                return l < r ? 1 : (l == r ? 0 : -1);
+            }
+        });
+        if (files.isEmpty()) {
+            endTime = System.currentTimeMillis();
+        }
+        for (final File file : files) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    digest(file);
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    private void digest(File file) {
+        final long[] last = new long[1];
+        try {
+            if (cancelled) {
+                return;
+            }
+            byte[] digest = EncryptUtils.digestFile(file, algorithm, new OnProgressListener() {
+                @Override
+                public void onProgress(long current, long total) {
+                    if (cancelled) {
+                        throw new CancellationException();
+                    }
+                    progress.add(current - last[0]);
+                    last[0] = current;
+                }
+            }, CHECK_INTERVAL);
+            digests.put(file, digest);
+        } catch (CancellationException ignored) {
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            cancelled = true;
+        } finally {
+            if (finishedFiles.incrementAndGet() == files.size()) {
+                endTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * 取消计算，正在计算的文件在读完当前块(最多256KB)后停止
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return executor.isTerminated();
+    }
+
+    /**
+     * 等待计算结束
+     *
+     * @return true表示全部计算完成，false表示被取消
+     * @throws IOException          某个文件读取失败，失败后其余文件不再计算
+     * @throws InterruptedException 等待时线程被中断，计算不受影响
+     */
+    public boolean await() throws IOException, InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        if (endTime == 0) {
+            endTime = System.currentTimeMillis();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return !cancelled;
+    }
+
+    /**
+     * @param file 传入的文件之一
+     * @return 摘要，还未计算完成时返回null
+     */
+    public byte[] getDigest(File file) {
+        return digests.get(file);
+    }
+
+    /**
+     * @param file 传入的文件之一
+     * @return 大写十六进制的摘要，还未计算完成时返回null
+     */
+    public String getHex(File file) {
+        byte[] digest = digests.get(file);
+        return digest == null ? null : bytes2HexString(digest);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int getTotalFiles() {
+        return files.size();
+    }
+
+    public long getHashedBytes() {
+        return progress.get();
+    }
+
+    public int getHashedFiles() {
+        return digests.size();
+    }
+
+    /**
+     * @return 从开始到现在(或结束)的平均速度，单位byte/s
+     */
+    public long getBytesPerSecond() {
+        long end = endTime != 0 ? endTime : System.currentTimeMillis();
+        return progress.get() * 1000 / Math.max(1, end - startTime);
+    }
+}
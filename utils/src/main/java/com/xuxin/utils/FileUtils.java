@@ -6,14 +6,19 @@ import android.content.res.AssetManager;
 import android.net.Uri;
 import android.os.Environment;
 
+import com.xuxin.utils.listener.OnProgressListener;
+
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 
 /**
@@ -30,6 +35,28 @@ public class FileUtils {
     public static final int SIZETYPE_MB = 3;//获取文件大小单位为MB的double值
     public static final int SIZETYPE_GB = 4;//获取文件大小单位为GB的double值
 
+    /**
+     * 默认每复制1MB回调一次进度
+     */
+    public static final long DEFAULT_PROGRESS_INTERVAL = 1024 * 1024;
+    /**
+     * 单次transferTo的长度，分段调用才能回调进度
+     */
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+    /**
+     * transferTo不可用时使用的直接缓冲区大小
+     */
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+    /**
+     * 直接缓冲区的分配和回收都比较昂贵，每个线程复用一块
+     */
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+    };
+
     /**
      * 获取sdCard的路径，如果不存在就返回空
      *
@@ -116,26 +143,170 @@ public class FileUtils {
      * @param deleteOldFile 是否删除旧文件
      * @throws IOException 文件读写出错，不会删除源文件
      */
-    public static synchronized void copyFile(File oldFile, File newFile, boolean deleteOldFile) throws IOException {
-        int byteSum = 0;
-        int byteRead;
+    public static void copyFile(File oldFile, File newFile, boolean deleteOldFile) throws IOException {
         if (oldFile.exists()) { //文件存在时
-            FileInputStream inputStream = new FileInputStream(oldFile); //读入原文件
-            FileOutputStream outputStream = new FileOutputStream(newFile);
-            byte[] buffer = new byte[1024];
-            while ((byteRead = inputStream.read(buffer)) != -1) {
-                byteSum += byteRead; //字节数 文件大小
-                System.out.println(byteSum);
-                outputStream.write(buffer, 0, byteRead);
-            }
-            inputStream.close();
-            outputStream.close();
+            copyFile(oldFile, newFile, null, 0);
             if (deleteOldFile) {
                 oldFile.delete();
             }
         }
     }
 
+    /**
+     * 复制文件，每复制{@link #DEFAULT_PROGRESS_INTERVAL}字节回调一次进度
+     *
+     * @param source   源文件
+     * @param target   目标文件，已存在时覆盖
+     * @param listener 进度回调，可以为null
+     * @return 复制的字节数
+     * @throws IOException 文件读写出错
+     */
+    public static long copyFile(File source, File target, OnProgressListener listener) throws IOException {
+        return copyFile(source, target, listener, DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    /**
+     * 复制文件
+     * 优先使用FileChannel.transferTo由内核直接复制，不经过Java堆；transferTo不可用时改用直接缓冲区
+     * 不持有全局锁，不同文件的复制可以并发进行
+     *
+     * @param source           源文件
+     * @param target           目标文件，已存在时覆盖，父目录不存在时创建
+     * @param listener         进度回调，可以为null
+     * @param progressInterval 两次回调之间至少复制的字节数，复制结束时总会回调一次
+     * @return 复制的字节数
+     * @throws IOException 文件读写出错
+     */
+    public static long copyFile(File source, File target, OnProgressListener listener, long progressInterval)
+            throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        FileInputStream inputStream = new FileInputStream(source);
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(target);
+            return transfer(inputStream.getChannel(), outputStream.getChannel(), listener, progressInterval);
+        } finally {
+            inputStream.close();
+            if (outputStream != null) {
+                outputStream.close();
+            }
+        }
+    }
+
+    /**
+     * 把in从当前位置到末尾的内容写入out的当前位置
+     */
+    private static long transfer(FileChannel in, FileChannel out, OnProgressListener listener, long progressInterval)
+            throws IOException {
+        long total = in.size();
+        long position = in.position();
+        long start = position;
+        long reported = position;
+        long chunk = listener == null ? TRANSFER_CHUNK
+                : Math.max(Math.min(TRANSFER_CHUNK, progressInterval), DIRECT_BUFFER_SIZE);
+        while (position < total) {
+            long transferred = in.transferTo(position, Math.min(chunk, total - position), out);
+            if (transferred <= 0) {
+                // 部分文件系统不支持sendfile，剩余部分用直接缓冲区复制
+                break;
+            }
+            position += transferred;
+            if (listener != null && position - reported >= progressInterval && position < total) {
+                reported = position;
+                listener.onProgress(position - start, total - start);
+            }
+        }
+        if (position < total) {
+            in.position(position);
+            ByteBuffer buffer = DIRECT_BUFFER.get();
+            buffer.clear();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+                position += read;
+                if (listener != null && position - reported >= progressInterval) {
+                    reported = position;
+                    listener.onProgress(position - start, Math.max(total, position) - start);
+                }
+            }
+        }
+        if (listener != null && (reported != position || position == start)) {
+            // 结束时回调一次(空文件也回调)
+            listener.onProgress(position - start, position - start);
+        }
+        return position - start;
+    }
+
+    /**
+     * 可断点续传的复制，适合几百MB以上的大文件
+     * 数据先写入target.part，已落盘的块和CRC32记录在target.journal中；进程被杀或存储被拔出后再次调用，
+     * 从最后一个校验通过的块继续。全部完成后临时文件重命名为目标文件并删除日志
+     * 比{@link #copyFile(File, File, OnProgressListener)}多一次用户态的复制和周期性的fsync，小文件不需要使用
+     *
+     * @param source   源文件，长度或修改时间变化后从头复制
+     * @param target   目标文件，已存在时覆盖
+     * @param listener 进度回调，可以为null，续传时先回调一次已完成的进度
+     * @return 本次复制的字节数，不包括之前已完成的部分
+     * @throws IOException 文件读写出错，已完成的部分保留，可以再次调用续传
+     */
+    public static long copyFileResumable(File source, File target, OnProgressListener listener) throws IOException {
+        if (!source.isFile()) {
+            throw new FileNotFoundException(source.getPath());
+        }
+        return ResumableCopier.copy(source, target, listener, DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    /**
+     * 删除{@link #copyFileResumable}留下的临时文件和日志，放弃续传
+     *
+     * @param target 目标文件
+     */
+    public static void clearResumableCopy(File target) {
+        ResumableCopier.partFile(target).delete();
+        ResumableCopier.journalFile(target).delete();
+    }
+
+    /**
+     * 并发复制目录，线程数按目标所在的存储决定
+     *
+     * @param source   源目录
+     * @param target   目标目录，不存在时创建，已存在的同名文件被覆盖
+     * @param listener 总进度回调，可以为null，在复制线程中回调
+     * @return 已开始的复制任务，用于等待、取消和查询速度
+     * @throws IOException 源目录不存在、目标在源目录内部或目录无法创建
+     */
+    public static DirectoryCopyTask copyDirectory(File source, File target, OnProgressListener listener)
+            throws IOException {
+        return copyDirectory(source, target, DirectoryCopyTask.defaultThreads(target), listener);
+    }
+
+    /**
+     * 并发复制目录
+     *
+     * @param source   源目录
+     * @param target   目标目录，不存在时创建，已存在的同名文件被覆盖
+     * @param threads  复制线程数
+     * @param listener 总进度回调，可以为null，在复制线程中回调
+     * @return 已开始的复制任务，用于等待、取消和查询速度
+     * @throws IOException 源目录不存在、目标在源目录内部或目录无法创建
+     */
+    public static DirectoryCopyTask copyDirectory(File source, File target, int threads, OnProgressListener listener)
+            throws IOException {
+        if (!source.isDirectory()) {
+            throw new FileNotFoundException(source + " is not a directory");
+        }
+        DirectoryCopyTask task = new DirectoryCopyTask(source, target, Math.max(1, threads), listener);
+        task.start();
+        return task;
+    }
+
     /**
      * 拷贝
      *
@@ -322,38 +493,22 @@ public class FileUtils {
      * 获取指定文件大小
      *
      * @param file 文件
-     * @return 文件大小
+     * @return 文件大小，文件不存在时为0
      * @throws Exception 异常
      */
     public static long getFileSize(File file) throws Exception {
-        long size = 0;
-        if (file.exists()) {
-            FileInputStream fis = new FileInputStream(file);
-            size = fis.available();
-        } else {
-            file.createNewFile();
-        }
-        return size;
+        return file.length();
     }
 
     /**
-     * 获取多个文件夹大小
+     * 获取多个文件夹大小，多线程遍历，需要子目录明细或限制耗时请使用{@link DirectoryUsage#scan}
      *
      * @param f 多个文件
      * @return 多个文件夹大小
      * @throws Exception 异常
      */
     public static long getFileSizes(File f) throws Exception {
-        long size = 0;
-        File flist[] = f.listFiles();
-        for (int i = 0; i < flist.length; i++) {
-            if (flist[i].isDirectory()) {
-                size = size + getFileSizes(flist[i]);
-            } else {
-                size = size + getFileSize(flist[i]);
-            }
-        }
-        return size;
+        return DirectoryUsage.scan(f).getTotalBytes();
     }
 
     /**
@@ -4,24 +4,276 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SharedPreferences相关操作
  */
 public class MPrefer {
 
-    private SharedPreferences sharedPreferences;
+    /**
+     * 使用系统SharedPreferences的xml文件存储
+     */
+    public static final int MODE_XML = 0;
+    /**
+     * 使用内存映射文件追加写入存储，见{@link MappedPreferences}
+     */
+    public static final int MODE_MAPPED = 1;
+    /**
+     * 与{@link #MODE_MAPPED}使用同一个文件，但允许多个进程同时读写，
+     * 所有访问该文件的进程都必须使用这个模式；同一进程中以{@link #MODE_MAPPED}打开的同一文件会一起切换为多进程模式
+     */
+    public static final int MODE_MULTI_PROCESS = 2;
+
+    private static final String TAG = "MPrefer";
+
+    /**
+     * 合并写入和预加载使用的后台线程，所有实例共用
+     */
+    private static final ScheduledExecutorService BACKGROUND_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "MPrefer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * 合并写入模式下已删除但尚未落盘的key的占位值
+     */
+    private static final Object REMOVED = new Object();
+
+    /**
+     * 通过{@link #get(Context, String, int)}创建的实例，每个文件只有一个
+     */
+    private static final ConcurrentMap<String, MPrefer> INSTANCES = new ConcurrentHashMap<>();
+    /**
+     * 每个文件第一次加载的耗时(毫秒)，按加载完成的顺序
+     */
+    private static final Map<String, Long> LOAD_COSTS = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+    private final Context context;
+    private final String fileName;
+    private final int mode;
+    private volatile SharedPreferences sharedPreferences;
     private Editor editor;
+    private long loadCost = -1;
+
+    /**
+     * 合并写入的时间窗口(毫秒)，小于等于0表示每次save都同步commit
+     */
+    private long coalesceWindow;
+    /**
+     * 已写入editor但尚未apply的数据，读取时优先于sharedPreferences
+     */
+    private final Map<String, Object> pending = new HashMap<>();
+    private boolean flushScheduled;
+
+    /**
+     * 读取用的快照，本实例的写入直接合并进去，文件被其他途径修改时置空，下次读取时重建
+     */
+    private volatile Snapshot snapshot;
+    /**
+     * 每次失效加一，避免把失效前构建的快照发布出去
+     */
+    private final AtomicInteger snapshotVersion = new AtomicInteger();
+
+    /**
+     * SharedPreferences只持有监听的弱引用，这里必须作为字段强引用
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener changeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    Snapshot current = snapshot;
+                    // 本实例自己的写入已经合并到快照中，只有值不一致时(其他实例或进程写入)才需要重建
+                    if (current != null && (key == null || !current.matches(key, sharedPreferences))) {
+                        invalidate();
+                    }
+                }
+            };
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
 
     /**
      * @param context  上下文对象
      * @param fileName 存储数据xml的名称
      */
     public MPrefer(Context context, String fileName) {
-        sharedPreferences = context.getSharedPreferences(
-                fileName, Context.MODE_PRIVATE);
-        editor = sharedPreferences.edit();
+        this(context, fileName, MODE_XML);
+    }
+
+    /**
+     * 构造时不读取文件，第一次读写时才加载
+     *
+     * @param context  上下文对象
+     * @param fileName 存储数据文件的名称
+     * @param mode     存储方式 {@link #MODE_XML}、{@link #MODE_MAPPED} 或 {@link #MODE_MULTI_PROCESS}
+     */
+    public MPrefer(Context context, String fileName, int mode) {
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        this.fileName = fileName;
+        this.mode = mode;
+    }
+
+    /**
+     * @param sharedPreferences 任意SharedPreferences实现
+     */
+    public MPrefer(SharedPreferences sharedPreferences) {
+        context = null;
+        fileName = null;
+        mode = MODE_XML;
+        attach(sharedPreferences);
+        loadCost = 0;
+    }
+
+    /**
+     * 获取文件对应的共享实例，同一个文件多次获取得到同一个对象
+     *
+     * @param context  上下文对象
+     * @param fileName 存储数据xml的名称
+     * @return MPrefer
+     */
+    public static MPrefer get(Context context, String fileName) {
+        return get(context, fileName, MODE_XML);
+    }
+
+    /**
+     * 获取文件对应的共享实例，同一个文件多次获取得到同一个对象
+     *
+     * @param context  上下文对象
+     * @param fileName 存储数据文件的名称
+     * @param mode     存储方式 {@link #MODE_XML}、{@link #MODE_MAPPED} 或 {@link #MODE_MULTI_PROCESS}
+     * @return MPrefer
+     */
+    public static MPrefer get(Context context, String fileName, int mode) {
+        String key = mode + "/" + fileName;
+        MPrefer prefer = INSTANCES.get(key);
+        if (prefer == null) {
+            prefer = new MPrefer(context, fileName, mode);
+            MPrefer existing = INSTANCES.putIfAbsent(key, prefer);
+            if (existing != null) {
+                prefer = existing;
+            }
+        }
+        return prefer;
+    }
+
+    /**
+     * 在后台线程依次加载文件，一般在Application.onCreate中调用
+     * 之后通过{@link #get(Context, String, int)}获取的实例不会再阻塞在文件解析上
+     *
+     * @param context   上下文对象
+     * @param mode      存储方式 {@link #MODE_XML}、{@link #MODE_MAPPED} 或 {@link #MODE_MULTI_PROCESS}
+     * @param fileNames 需要预加载的文件名称
+     */
+    public static void preload(final Context context, final int mode, final String... fileNames) {
+        BACKGROUND_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String fileName : fileNames) {
+                    try {
+                        get(context, fileName, mode).prefs();
+                    } catch (RuntimeException e) {
+                        XLog.e(TAG, "preload " + fileName + " failed", e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取各文件第一次加载的耗时，用于分析启动耗时
+     *
+     * @return 文件名称-耗时(毫秒)，按加载完成的顺序
+     */
+    public static Map<String, Long> getLoadCosts() {
+        synchronized (LOAD_COSTS) {
+            return new LinkedHashMap<>(LOAD_COSTS);
+        }
+    }
+
+    /**
+     * @return 本实例加载文件的耗时(毫秒)，尚未加载时返回-1
+     */
+    public synchronized long getLoadCost() {
+        return loadCost;
+    }
+
+    /**
+     * 第一次调用时打开文件并等待解析完成
+     */
+    private SharedPreferences prefs() {
+        SharedPreferences current = sharedPreferences;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (sharedPreferences == null) {
+                long start = System.nanoTime();
+                SharedPreferences opened = open(context, fileName, mode);
+                // 系统实现在xml解析完成前会阻塞所有读取，这里触发一次等待加载完成
+                opened.contains(fileName);
+                attach(opened);
+                loadCost = (System.nanoTime() - start) / 1000000;
+                LOAD_COSTS.put(fileName, loadCost);
+                XLog.d(TAG, "load " + fileName + " cost " + loadCost + "ms");
+            }
+            return sharedPreferences;
+        }
+    }
+
+    private Editor editor() {
+        prefs();
+        return editor;
+    }
+
+    private void attach(SharedPreferences opened) {
+        editor = opened.edit();
+        opened.registerOnSharedPreferenceChangeListener(changeListener);
+        sharedPreferences = opened;
+    }
+
+    private static SharedPreferences open(Context context, String fileName, int mode) {
+        if (mode != MODE_MAPPED && mode != MODE_MULTI_PROCESS) {
+            return context.getSharedPreferences(fileName, Context.MODE_PRIVATE);
+        }
+        File file = getMappedFile(context, fileName);
+        try {
+            return MappedPreferences.get(file, mode == MODE_MULTI_PROCESS);
+        } catch (IOException e) {
+            throw new IllegalStateException("open " + file + " failed", e);
+        }
+    }
+
+    /**
+     * 内存映射存储的文件位置(/data/data/com.xxx.xxx/mapped_prefs/fileName.kv)
+     *
+     * @param context  上下文对象
+     * @param fileName 存储数据文件的名称
+     * @return 文件
+     */
+    public static File getMappedFile(Context context, String fileName) {
+        return new File(context.getFilesDir().getParentFile(), "mapped_prefs" + File.separator + fileName + ".kv");
     }
 
     /**
@@ -31,8 +283,7 @@ public class MPrefer {
      * @param content 保存参数的值 boolean 类型
      */
     public void save(String name, boolean content) {
-        editor.putBoolean(name, content);
-        editor.commit();
+        put(name, content);
     }
 
     /**
@@ -42,8 +293,7 @@ public class MPrefer {
      * @param content 保存参数的值 float 类型
      */
     public void save(String name, float content) {
-        editor.putFloat(name, content);
-        editor.commit();
+        put(name, content);
     }
 
     /**
@@ -53,8 +303,7 @@ public class MPrefer {
      * @param content 保存参数的值 int 类型
      */
     public void save(String name, int content) {
-        editor.putInt(name, content);
-        editor.commit();
+        put(name, content);
     }
 
     /**
@@ -64,8 +313,7 @@ public class MPrefer {
      * @param content 保存参数的值 long 类型
      */
     public void save(String name, long content) {
-        editor.putLong(name, content);
-        editor.commit();
+        put(name, content);
     }
 
     /**
@@ -75,8 +323,7 @@ public class MPrefer {
      * @param content 保存参数的值 String 类型
      */
     public void save(String name, String content) {
-        editor.putString(name, content);
-        editor.commit();
+        put(name, content);
     }
 
     /**
@@ -99,7 +346,7 @@ public class MPrefer {
      * 如果该参数不存在就返回 defValue
      */
     public boolean readBoolean(String name, boolean defValue) {
-        return sharedPreferences.getBoolean(name, defValue);
+        return snapshot().getBoolean(name, defValue);
     }
 
     /**
@@ -122,7 +369,7 @@ public class MPrefer {
      * 如果该参数不存在就返回 defValue
      */
     public float readFloat(String name, float defValue) {
-        return sharedPreferences.getFloat(name, defValue);
+        return snapshot().getFloat(name, defValue);
     }
 
     /**
@@ -145,7 +392,7 @@ public class MPrefer {
      * 如果该参数不存在就返回 defValue
      */
     public int readInt(String name, int defValue) {
-        return sharedPreferences.getInt(name, defValue);
+        return snapshot().getInt(name, defValue);
     }
 
     /**
@@ -168,7 +415,7 @@ public class MPrefer {
      * 如果该参数不存在就返回 defValue
      */
     public long readLong(String name, long defValue) {
-        return sharedPreferences.getLong(name, defValue);
+        return snapshot().getLong(name, defValue);
     }
 
     /**
@@ -191,26 +438,454 @@ public class MPrefer {
      * 如果该参数不存在就返回 defValue
      */
     public String readString(String name, String defValue) {
-        return sharedPreferences.getString(name, defValue);
+        return snapshot().getString(name, defValue);
     }
 
     /**
      * 读取所有存储在xml文件中的key-value
      *
-     * @return 存储的所有key-value的map
+     * @return 存储的所有key-value的只读map，快照重建后没有写入时与快照共用，不会复制
      */
     public Map<String, ?> readAll() {
-        return sharedPreferences.getAll();
+        return snapshot().asMap();
     }
 
     /**
      * 清除存储文件中的所有数据
      */
-    public void removeAll() {
-        editor.clear().commit();
+    public synchronized void removeAll() {
+        pending.clear();
+        editor().clear().commit();
+        invalidate();
     }
 
     public boolean contains(String key) {
-        return sharedPreferences.contains(key);
+        return snapshot().contains(key);
+    }
+
+    /**
+     * 开启合并写入模式，时间窗口内的多次save只在后台做一次apply
+     * 窗口内的数据在落盘前依然可以通过read方法读到
+     *
+     * @param windowMillis 合并的时间窗口(毫秒)，小于等于0表示关闭，每次save都同步commit
+     */
+    public void setCoalesceWindow(long windowMillis) {
+        boolean flushNow;
+        synchronized (this) {
+            coalesceWindow = windowMillis;
+            flushNow = windowMillis <= 0 && !pending.isEmpty();
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * 立即把合并写入模式下尚未落盘的数据apply，例如在onPause中调用
+     */
+    public synchronized void flush() {
+        flushScheduled = false;
+        if (!pending.isEmpty()) {
+            editor().apply();
+            pending.clear();
+        }
+    }
+
+    /**
+     * 开始一次批量写入，所有put在apply或commit时一次性写入文件
+     * <pre>
+     * prefer.begin()
+     *         .put("name", "xx")
+     *         .put("age", 18)
+     *         .apply();
+     * </pre>
+     *
+     * @return Batch
+     */
+    public Batch begin() {
+        return new Batch();
+    }
+
+    private void put(String name, Object content) {
+        boolean commit;
+        synchronized (this) {
+            putToEditor(name, content);
+            commit = coalesceWindow <= 0;
+            if (!commit && !flushScheduled) {
+                flushScheduled = true;
+                BACKGROUND_EXECUTOR.schedule(flushTask, coalesceWindow, TimeUnit.MILLISECONDS);
+            }
+            if (commit) {
+                editor().commit();
+            }
+        }
+    }
+
+    /**
+     * 必须持有this锁调用
+     */
+    private void putToEditor(String name, Object content) {
+        if (content == REMOVED) {
+            editor().remove(name);
+        } else if (content instanceof Boolean) {
+            editor().putBoolean(name, (Boolean) content);
+        } else if (content instanceof Float) {
+            editor().putFloat(name, (Float) content);
+        } else if (content instanceof Integer) {
+            editor().putInt(name, (Integer) content);
+        } else if (content instanceof Long) {
+            editor().putLong(name, (Long) content);
+        } else {
+            editor().putString(name, (String) content);
+        }
+        if (coalesceWindow > 0) {
+            pending.put(name, content);
+        }
+        Snapshot current = snapshot;
+        if (current != null && !current.update(name, content)) {
+            invalidate();
+        }
+    }
+
+    private void invalidate() {
+        snapshotVersion.incrementAndGet();
+        snapshot = null;
+    }
+
+    /**
+     * 读取路径上不加锁，只有快照失效后的第一次读取需要重建
+     * 重建在this锁内读取全部数据，与写入、flush互斥，不会漏掉刚apply的数据
+     */
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        SharedPreferences prefs = prefs();
+        if (prefs instanceof MappedPreferences && ((MappedPreferences) prefs).reloadIfChanged()) {
+            // 其他进程写入过，监听回调在主线程，这里直接失效
+            invalidate();
+            current = null;
+        }
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current != null) {
+                return current;
+            }
+            int version = snapshotVersion.get();
+            Map<String, ?> all = prefs.getAll();
+            if (!pending.isEmpty()) {
+                Map<String, Object> merged = new HashMap<String, Object>(all);
+                for (Map.Entry<String, Object> entry : pending.entrySet()) {
+                    if (entry.getValue() == REMOVED) {
+                        merged.remove(entry.getKey());
+                    } else {
+                        merged.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                all = merged;
+            }
+            current = new Snapshot(all);
+            if (snapshotVersion.get() == version) {
+                snapshot = current;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 批量写入，put的数据在apply或commit前不会写入文件，也不能被读到
+     */
+    public class Batch {
+
+        private final Map<String, Object> changes = new LinkedHashMap<>();
+
+        private Batch() {
+        }
+
+        public Batch put(String name, boolean content) {
+            changes.put(name, content);
+            return this;
+        }
+
+        public Batch put(String name, float content) {
+            changes.put(name, content);
+            return this;
+        }
+
+        public Batch put(String name, int content) {
+            changes.put(name, content);
+            return this;
+        }
+
+        public Batch put(String name, long content) {
+            changes.put(name, content);
+            return this;
+        }
+
+        public Batch put(String name, String content) {
+            changes.put(name, content);
+            return this;
+        }
+
+        public Batch remove(String name) {
+            changes.put(name, REMOVED);
+            return this;
+        }
+
+        /**
+         * 内存中立即生效，在后台线程写入文件
+         */
+        public void apply() {
+            synchronized (MPrefer.this) {
+                write();
+                editor().apply();
+                pending.clear();
+            }
+        }
+
+        /**
+         * 同步写入文件
+         *
+         * @return 是否写入成功
+         */
+        public boolean commit() {
+            synchronized (MPrefer.this) {
+                write();
+                pending.clear();
+                return editor().commit();
+            }
+        }
+
+        private void write() {
+            for (Map.Entry<String, Object> entry : changes.entrySet()) {
+                putToEditor(entry.getKey(), entry.getValue());
+            }
+            changes.clear();
+        }
+    }
+
+    /**
+     * 开放寻址哈希表，基本类型的值直接存放在long数组中，读取时不装箱
+     * 表本身构建后不再修改，之后的写入放在changes中优先读取，写入过多时整体重建，
+     * 这样每次写入只是O(1)，重建的开销分摊到多次写入上
+     * 与SharedPreferences一致，按错误的类型读取已存在的key时抛出ClassCastException
+     */
+    private static final class Snapshot {
+
+        private static final byte TYPE_BOOLEAN = 1;
+        private static final byte TYPE_FLOAT = 2;
+        private static final byte TYPE_INT = 3;
+        private static final byte TYPE_LONG = 4;
+        private static final byte TYPE_OBJECT = 5;
+
+        private final String[] keys;
+        private final byte[] types;
+        private final long[] primitives;
+        private final Object[] objects;
+        private final int mask;
+        private final Map<String, ?> map;
+        /**
+         * 构建后的写入，删除用REMOVED表示
+         */
+        private final ConcurrentHashMap<String, Object> changes = new ConcurrentHashMap<>();
+
+        Snapshot(Map<String, ?> all) {
+            int capacity = 4;
+            while (capacity < all.size() * 2) {
+                capacity <<= 1;
+            }
+            keys = new String[capacity];
+            types = new byte[capacity];
+            primitives = new long[capacity];
+            objects = new Object[capacity];
+            mask = capacity - 1;
+            for (Map.Entry<String, ?> entry : all.entrySet()) {
+                String key = entry.getKey();
+                Object value = entry.getValue();
+                if (key == null || value == null) {
+                    continue;
+                }
+                int index = key.hashCode() & mask;
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                if (value instanceof Boolean) {
+                    types[index] = TYPE_BOOLEAN;
+                    primitives[index] = (Boolean) value ? 1 : 0;
+                } else if (value instanceof Float) {
+                    types[index] = TYPE_FLOAT;
+                    primitives[index] = Float.floatToRawIntBits((Float) value);
+                } else if (value instanceof Integer) {
+                    types[index] = TYPE_INT;
+                    primitives[index] = (Integer) value;
+                } else if (value instanceof Long) {
+                    types[index] = TYPE_LONG;
+                    primitives[index] = (Long) value;
+                } else {
+                    types[index] = TYPE_OBJECT;
+                    objects[index] = value;
+                }
+            }
+            map = Collections.unmodifiableMap(all);
+        }
+
+        /**
+         * 合并一次写入，必须持有MPrefer的锁调用
+         *
+         * @return false表示写入已经太多，需要重建
+         */
+        boolean update(String key, Object value) {
+            if (changes.size() >= Math.max(16, keys.length / 2)) {
+                return false;
+            }
+            changes.put(key, value == null ? REMOVED : value);
+            return true;
+        }
+
+        /**
+         * @return 快照中的值，不存在时返回null
+         */
+        Object get(String key) {
+            if (!changes.isEmpty()) {
+                Object value = changes.get(key);
+                if (value != null) {
+                    return value == REMOVED ? null : value;
+                }
+            }
+            return map.get(key);
+        }
+
+        /**
+         * @return 快照中key的值是否与prefs中一致
+         */
+        boolean matches(String key, SharedPreferences prefs) {
+            Object value = get(key);
+            if (value == null) {
+                return !prefs.contains(key);
+            }
+            try {
+                if (value instanceof Boolean) {
+                    return prefs.contains(key) && prefs.getBoolean(key, false) == (Boolean) value;
+                } else if (value instanceof Float) {
+                    return prefs.contains(key) && prefs.getFloat(key, 0) == (Float) value;
+                } else if (value instanceof Integer) {
+                    return prefs.contains(key) && prefs.getInt(key, 0) == (Integer) value;
+                } else if (value instanceof Long) {
+                    return prefs.contains(key) && prefs.getLong(key, 0) == (Long) value;
+                } else if (value instanceof String) {
+                    return value.equals(prefs.getString(key, null));
+                }
+            } catch (ClassCastException e) {
+                // 类型变了
+                return false;
+            }
+            return false;
+        }
+
+        private int indexOf(String key) {
+            int index = key.hashCode() & mask;
+            String current;
+            while ((current = keys[index]) != null) {
+                if (current == key || current.equals(key)) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        boolean contains(String key) {
+            if (!changes.isEmpty()) {
+                Object value = changes.get(key);
+                if (value != null) {
+                    return value != REMOVED;
+                }
+            }
+            return indexOf(key) >= 0;
+        }
+
+        boolean getBoolean(String key, boolean defValue) {
+            if (!changes.isEmpty()) {
+                Object value = changes.get(key);
+                if (value != null) {
+                    return value == REMOVED ? defValue : (Boolean) value;
+                }
+            }
+            int index = indexOf(key);
+            if (index < 0) {
+                return defValue;
+            }
+            return types[index] == TYPE_BOOLEAN ? primitives[index] != 0 : (Boolean) map.get(key);
+        }
+
+        float getFloat(String key, float defValue) {
+            if (!changes.isEmpty()) {
+                Object value = changes.get(key);
+                if (value != null) {
+                    return value == REMOVED ? defValue : (Float) value;
+                }
+            }
+            int index = indexOf(key);
+            if (index < 0) {
+                return defValue;
+            }
+            return types[index] == TYPE_FLOAT ? Float.intBitsToFloat((int) primitives[index]) : (Float) map.get(key);
+        }
+
+        int getInt(String key, int defValue) {
+            if (!changes.isEmpty()) {
+                Object value = changes.get(key);
+                if (value != null) {
+                    return value == REMOVED ? defValue : (Integer) value;
+                }
+            }
+            int index = indexOf(key);
+            if (index < 0) {
+                return defValue;
+            }
+            return types[index] == TYPE_INT ? (int) primitives[index] : (Integer) map.get(key);
+        }
+
+        long getLong(String key, long defValue) {
+            if (!changes.isEmpty()) {
+                Object value = changes.get(key);
+                if (value != null) {
+                    return value == REMOVED ? defValue : (Long) value;
+                }
+            }
+            int index = indexOf(key);
+            if (index < 0) {
+                return defValue;
+            }
+            return types[index] == TYPE_LONG ? primitives[index] : (Long) map.get(key);
+        }
+
+        String getString(String key, String defValue) {
+            if (!changes.isEmpty()) {
+                Object value = changes.get(key);
+                if (value != null) {
+                    return value == REMOVED ? defValue : (String) value;
+                }
+            }
+            int index = indexOf(key);
+            return index >= 0 ? (String) map.get(key) : defValue;
+        }
+
+        Map<String, ?> asMap() {
+            if (changes.isEmpty()) {
+                return map;
+            }
+            Map<String, Object> merged = new HashMap<String, Object>(map);
+            for (Map.Entry<String, Object> entry : changes.entrySet()) {
+                if (entry.getValue() == REMOVED) {
+                    merged.remove(entry.getKey());
+                } else {
+                    merged.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return Collections.unmodifiableMap(merged);
+        }
     }
 }
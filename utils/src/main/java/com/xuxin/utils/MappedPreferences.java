@@ -0,0 +1,950 @@
+package com.xuxin.utils;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的SharedPreferences实现
+ * 每次写入只在文件末尾追加一条带CRC32校验的记录，不会像xml那样整个文件重写
+ * 失效的记录超过一半时整理(compaction)到新文件后原子替换
+ * 打开时逐条校验记录，遇到不完整或校验失败的记录即认为是崩溃时写了一半，丢弃其后的内容
+ * <p>
+ * 文件格式: [magic(4)][version(4)][reserved(8)] 之后是若干条记录
+ * 记录: [payload长度(4)][payload的CRC32(4)][payload]
+ * payload: [类型(1)][key长度(4)][key][值]
+ * <p>
+ * 多进程模式下额外使用一个.lock文件，通过FileChannel.lock协调写入，
+ * 文件中记录 [写入序号(8)][整理代数(8)][有效数据结尾(4)]，
+ * 读取时只比较写入序号，其他进程写入过才加锁读取新追加的记录，整理过才重新打开文件
+ * 同一个进程中对同一个FileChannel.lock两次会抛出OverlappingFileLockException，
+ * 因此实例只能通过{@link #get(File, boolean)}获取，每个文件(按规范路径)在进程内只有一个实例
+ */
+public class MappedPreferences implements SharedPreferences {
+
+    private static final int MAGIC = 0x584D4B56;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MIN_CAPACITY = 16 * 1024;
+    private static final int LOCK_FILE_SIZE = 64;
+    private static final int LOCK_SEQUENCE = 0;
+    private static final int LOCK_GENERATION = 8;
+    private static final int LOCK_END = 16;
+    /**
+     * 失效记录小于这个值时不做整理
+     */
+    private static final int COMPACT_THRESHOLD = 32 * 1024;
+
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_STRING = 5;
+    private static final byte TYPE_STRING_SET = 6;
+    private static final byte TYPE_REMOVE = 7;
+    private static final byte TYPE_CLEAR = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Object CONTENT = new Object();
+    /**
+     * 进程内已打开的实例，key为文件的规范路径
+     */
+    private static final Map<String, MappedPreferences> INSTANCES = new HashMap<>();
+
+    private final File file;
+    private final String key;
+    private final Map<String, Object> values = new HashMap<>();
+    /**
+     * 每个key当前有效记录的字节数，用于统计失效的字节
+     */
+    private final Map<String, Integer> recordSizes = new HashMap<>();
+    private final WeakHashMap<OnSharedPreferenceChangeListener, Object> listeners = new WeakHashMap<>();
+    private final CRC32 crc32 = new CRC32();
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+    private int garbageSize;
+
+    /**
+     * 单进程打开的实例之后又以多进程方式获取时会切换为多进程模式
+     */
+    private volatile boolean multiProcess;
+    private RandomAccessFile lockFile;
+    private MappedByteBuffer lockBuffer;
+    /**
+     * 本进程最后一次同步时的写入序号和整理代数
+     */
+    private long sequence;
+    private long generation;
+
+    private MappedPreferences(File file, String key, boolean multiProcess) throws IOException {
+        this.file = file;
+        this.key = key;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        if (!multiProcess) {
+            open();
+            return;
+        }
+        boolean success = false;
+        try {
+            openLock();
+            success = true;
+        } finally {
+            if (!success) {
+                closeFiles();
+            }
+        }
+    }
+
+    /**
+     * 获取单进程模式的实例，见{@link #get(File, boolean)}
+     */
+    public static MappedPreferences get(File file) throws IOException {
+        return get(file, false);
+    }
+
+    /**
+     * 打开或创建文件并恢复其中的数据，同一个文件在进程内多次获取得到同一个实例
+     * 已有单进程模式的实例时以多进程方式获取，该实例会切换为多进程模式；
+     * 已有多进程模式的实例时以单进程方式获取，直接返回多进程模式的实例
+     *
+     * @param file         存储数据的文件
+     * @param multiProcess 是否有多个进程同时读写该文件
+     * @return 共享的实例，{@link #close()}之后再获取会重新打开
+     * @throws IOException 文件无法读写
+     */
+    public static MappedPreferences get(File file, boolean multiProcess) throws IOException {
+        String key = file.getCanonicalPath();
+        synchronized (INSTANCES) {
+            MappedPreferences instance = INSTANCES.get(key);
+            if (instance == null) {
+                instance = new MappedPreferences(file, key, multiProcess);
+                INSTANCES.put(key, instance);
+            } else if (multiProcess) {
+                instance.enableMultiProcess();
+            }
+            return instance;
+        }
+    }
+
+    private synchronized void enableMultiProcess() throws IOException {
+        if (multiProcess) {
+            return;
+        }
+        if (channel == null) {
+            throw new IOException("MappedPreferences is closed: " + file);
+        }
+        openLock();
+    }
+
+    /**
+     * 打开.lock文件并切换为多进程模式，数据文件未打开时一并打开
+     */
+    private void openLock() throws IOException {
+        lockFile = new RandomAccessFile(file.getPath() + ".lock", "rw");
+        if (lockFile.length() < LOCK_FILE_SIZE) {
+            lockFile.setLength(LOCK_FILE_SIZE);
+        }
+        lockBuffer = lockFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, LOCK_FILE_SIZE);
+        FileLock lock = lockFile.getChannel().lock();
+        try {
+            if (channel == null) {
+                open();
+            } else {
+                // 单进程模式下已经打开过，其他进程可能在此之前写入或整理过，重新读取
+                channel.close();
+                randomAccessFile.close();
+                open();
+            }
+            sequence = lockBuffer.getLong(LOCK_SEQUENCE);
+            generation = lockBuffer.getLong(LOCK_GENERATION);
+            if (lockBuffer.getInt(LOCK_END) != writePosition) {
+                // 上次写入的进程崩溃了，以实际恢复出的数据为准
+                publish();
+            }
+        } finally {
+            lock.release();
+        }
+        multiProcess = true;
+    }
+
+    public boolean isMultiProcess() {
+        return multiProcess;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private void open() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        long length = randomAccessFile.length();
+        boolean fresh = length < HEADER_SIZE;
+        int capacity = (int) Math.max(length, MIN_CAPACITY);
+        if (length < capacity) {
+            randomAccessFile.setLength(capacity);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            values.clear();
+            recordSizes.clear();
+            writeHeader(buffer);
+            clearFrom(HEADER_SIZE);
+            writePosition = HEADER_SIZE;
+            garbageSize = 0;
+        } else {
+            recover();
+        }
+    }
+
+    /**
+     * 逐条读取并校验记录，在第一条损坏的记录处截断
+     */
+    private void recover() {
+        values.clear();
+        recordSizes.clear();
+        garbageSize = 0;
+        int position = scan(HEADER_SIZE, buffer.capacity(), null);
+        if (position + 4 <= buffer.capacity() && buffer.getInt(position) != 0) {
+            // 有半条记录，清掉以免之后追加的短记录后面残留看似合法的数据
+            clearFrom(position);
+        }
+        writePosition = position;
+    }
+
+    /**
+     * 从position开始重放记录直到limit或第一条损坏的记录
+     *
+     * @param changedKeys 不为空时收集发生变化的key
+     * @return 最后一条有效记录的结尾
+     */
+    private int scan(int position, int limit, List<String> changedKeys) {
+        int capacity = Math.min(limit, buffer.capacity());
+        byte[] payload = new byte[256];
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > capacity - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            if (payload.length < length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+            int crc = buffer.getInt(position + 4);
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(position + RECORD_HEADER_SIZE);
+            duplicate.get(payload, 0, length);
+            crc32.reset();
+            crc32.update(payload, 0, length);
+            if ((int) crc32.getValue() != crc) {
+                break;
+            }
+            if (!replay(ByteBuffer.wrap(payload, 0, length), position, RECORD_HEADER_SIZE + length, changedKeys)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private boolean replay(ByteBuffer payload, int position, int recordSize, List<String> changedKeys) {
+        byte type = payload.get();
+        if (type == TYPE_CLEAR) {
+            // CLEAR记录及之前的所有记录都失效了
+            garbageSize = position + recordSize - HEADER_SIZE;
+            if (changedKeys != null) {
+                changedKeys.addAll(values.keySet());
+            }
+            values.clear();
+            recordSizes.clear();
+            return true;
+        }
+        int keyLength = payload.getInt();
+        if (keyLength < 0 || keyLength > payload.remaining()) {
+            return false;
+        }
+        String key = readString(payload, keyLength);
+        Object value;
+        switch (type) {
+            case TYPE_BOOLEAN:
+                value = payload.get() != 0;
+                break;
+            case TYPE_INT:
+                value = payload.getInt();
+                break;
+            case TYPE_LONG:
+                value = payload.getLong();
+                break;
+            case TYPE_FLOAT:
+                value = payload.getFloat();
+                break;
+            case TYPE_STRING:
+                value = readString(payload, payload.getInt());
+                break;
+            case TYPE_STRING_SET:
+                int count = payload.getInt();
+                Set<String> set = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    set.add(readString(payload, payload.getInt()));
+                }
+                value = set;
+                break;
+            case TYPE_REMOVE:
+                value = null;
+                break;
+            default:
+                return false;
+        }
+        Integer oldSize = recordSizes.remove(key);
+        if (oldSize != null) {
+            garbageSize += oldSize;
+        }
+        if (value == null) {
+            values.remove(key);
+            garbageSize += recordSize;
+        } else {
+            values.put(key, value);
+            recordSizes.put(key, recordSize);
+        }
+        if (changedKeys != null) {
+            changedKeys.add(key);
+        }
+        return true;
+    }
+
+    /**
+     * 多进程模式下检查其他进程是否写入过，写入过则读取新的记录并回调监听
+     * 没有变化时只读取一次.lock文件中的序号，不加锁
+     *
+     * @return 是否有变化
+     */
+    public boolean reloadIfChanged() {
+        if (!multiProcess || lockBuffer.getLong(LOCK_SEQUENCE) == sequence) {
+            return false;
+        }
+        List<String> changedKeys;
+        synchronized (this) {
+            if (channel == null) {
+                return false;
+            }
+            FileLock lock = null;
+            try {
+                lock = lockFile.getChannel().lock();
+                changedKeys = sync();
+            } catch (IOException e) {
+                XLog.e("MappedPreferences", "reload " + file + " failed", e);
+                return false;
+            } finally {
+                release(lock);
+            }
+        }
+        notifyListeners(changedKeys);
+        return !changedKeys.isEmpty();
+    }
+
+    /**
+     * 同步其他进程的写入，必须持有this锁和文件锁调用
+     *
+     * @return 发生变化的key
+     */
+    private List<String> sync() throws IOException {
+        List<String> changedKeys = new ArrayList<>();
+        long currentSequence = lockBuffer.getLong(LOCK_SEQUENCE);
+        if (currentSequence == sequence) {
+            return changedKeys;
+        }
+        long currentGeneration = lockBuffer.getLong(LOCK_GENERATION);
+        int end = lockBuffer.getInt(LOCK_END);
+        if (currentGeneration != generation || end < writePosition) {
+            // 文件被其他进程整理替换过，重新打开后比较差异
+            Map<String, Object> old = new HashMap<>(values);
+            channel.close();
+            randomAccessFile.close();
+            open();
+            for (Map.Entry<String, Object> entry : old.entrySet()) {
+                if (!entry.getValue().equals(values.get(entry.getKey()))) {
+                    changedKeys.add(entry.getKey());
+                }
+            }
+            for (String key : values.keySet()) {
+                if (!old.containsKey(key)) {
+                    changedKeys.add(key);
+                }
+            }
+        } else {
+            if (end > buffer.capacity()) {
+                // 其他进程扩容过
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+            }
+            writePosition = scan(writePosition, end, changedKeys);
+        }
+        sequence = currentSequence;
+        generation = currentGeneration;
+        return changedKeys;
+    }
+
+    /**
+     * 把本进程的写入通知其他进程，必须持有this锁和文件锁调用
+     */
+    private void publish() {
+        lockBuffer.putInt(LOCK_END, writePosition);
+        lockBuffer.putLong(LOCK_GENERATION, generation);
+        sequence = lockBuffer.getLong(LOCK_SEQUENCE) + 1;
+        lockBuffer.putLong(LOCK_SEQUENCE, sequence);
+    }
+
+    private static void release(FileLock lock) {
+        if (lock != null) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer payload, int length) {
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    private static void writeHeader(ByteBuffer target) {
+        target.putInt(0, MAGIC);
+        target.putInt(4, VERSION);
+        target.putLong(8, 0);
+    }
+
+    private void clearFrom(int position) {
+        int capacity = buffer.capacity();
+        for (int i = position; i < capacity; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        reloadIfChanged();
+        synchronized (this) {
+            return new HashMap<>(values);
+        }
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        reloadIfChanged();
+        synchronized (this) {
+            Object value = values.get(key);
+            return value != null ? (String) value : defValue;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        reloadIfChanged();
+        synchronized (this) {
+            Object value = values.get(key);
+            return value != null ? (Set<String>) value : defValues;
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        reloadIfChanged();
+        synchronized (this) {
+            Object value = values.get(key);
+            return value != null ? (Integer) value : defValue;
+        }
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        reloadIfChanged();
+        synchronized (this) {
+            Object value = values.get(key);
+            return value != null ? (Long) value : defValue;
+        }
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        reloadIfChanged();
+        synchronized (this) {
+            Object value = values.get(key);
+            return value != null ? (Float) value : defValue;
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        reloadIfChanged();
+        synchronized (this) {
+            Object value = values.get(key);
+            return value != null ? (Boolean) value : defValue;
+        }
+    }
+
+    @Override
+    public boolean contains(String key) {
+        reloadIfChanged();
+        synchronized (this) {
+            return values.containsKey(key);
+        }
+    }
+
+    @Override
+    public Editor edit() {
+        return new EditorImpl();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            listeners.put(listener, CONTENT);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * 把失效的记录整理掉，只保留每个key的最新值
+     */
+    public synchronized void compact() throws IOException {
+        FileLock lock = multiProcess ? lockFile.getChannel().lock() : null;
+        try {
+            if (multiProcess) {
+                sync();
+            }
+            compact(0);
+            if (multiProcess) {
+                publish();
+            }
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * 关闭文件，之后不能再读写；实例是共享的，只在进程内确定不再使用该文件时调用
+     */
+    public void close() throws IOException {
+        synchronized (INSTANCES) {
+            if (INSTANCES.get(key) == this) {
+                INSTANCES.remove(key);
+            }
+        }
+        synchronized (this) {
+            if (channel != null) {
+                buffer.force();
+                closeFiles();
+            }
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        try {
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        } finally {
+            channel = null;
+            if (lockFile != null) {
+                lockFile.close();
+            }
+        }
+    }
+
+    /**
+     * 必须持有this锁调用
+     *
+     * @param extra 整理后至少需要预留的空间
+     */
+    private void compact(int extra) throws IOException {
+        List<byte[]> records = new ArrayList<>(values.size());
+        int size = HEADER_SIZE;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            byte[] record = encode(entry.getKey(), entry.getValue());
+            records.add(record);
+            size += record.length;
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity < (size + extra) * 2L) {
+            capacity *= 2;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        RandomAccessFile tempFile = new RandomAccessFile(temp, "rw");
+        try {
+            tempFile.setLength(0);
+            tempFile.setLength(capacity);
+            MappedByteBuffer tempBuffer = tempFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            writeHeader(tempBuffer);
+            tempBuffer.position(HEADER_SIZE);
+            for (byte[] record : records) {
+                tempBuffer.put(record);
+            }
+            tempBuffer.force();
+        } finally {
+            tempFile.close();
+        }
+
+        channel.close();
+        randomAccessFile.close();
+        if (!temp.renameTo(file)) {
+            open();
+            throw new IOException("rename " + temp + " failed");
+        }
+        open();
+        generation++;
+    }
+
+    private byte[] encode(String key, Object value) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte type;
+        int valueSize;
+        byte[] stringBytes = null;
+        byte[][] setBytes = null;
+        if (value == null) {
+            type = TYPE_REMOVE;
+            valueSize = 0;
+        } else if (value instanceof Boolean) {
+            type = TYPE_BOOLEAN;
+            valueSize = 1;
+        } else if (value instanceof Integer) {
+            type = TYPE_INT;
+            valueSize = 4;
+        } else if (value instanceof Long) {
+            type = TYPE_LONG;
+            valueSize = 8;
+        } else if (value instanceof Float) {
+            type = TYPE_FLOAT;
+            valueSize = 4;
+        } else if (value instanceof String) {
+            type = TYPE_STRING;
+            stringBytes = ((String) value).getBytes(UTF_8);
+            valueSize = 4 + stringBytes.length;
+        } else {
+            type = TYPE_STRING_SET;
+            Set<?> set = (Set<?>) value;
+            setBytes = new byte[set.size()][];
+            valueSize = 4;
+            int i = 0;
+            for (Object item : set) {
+                setBytes[i] = String.valueOf(item).getBytes(UTF_8);
+                valueSize += 4 + setBytes[i].length;
+                i++;
+            }
+        }
+        int payloadSize = 1 + 4 + keyBytes.length + valueSize;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payloadSize);
+        record.putInt(payloadSize);
+        record.putInt(0);
+        record.put(type);
+        record.putInt(keyBytes.length);
+        record.put(keyBytes);
+        switch (type) {
+            case TYPE_BOOLEAN:
+                record.put((byte) ((Boolean) value ? 1 : 0));
+                break;
+            case TYPE_INT:
+                record.putInt((Integer) value);
+                break;
+            case TYPE_LONG:
+                record.putLong((Long) value);
+                break;
+            case TYPE_FLOAT:
+                record.putFloat((Float) value);
+                break;
+            case TYPE_STRING:
+                record.putInt(stringBytes.length);
+                record.put(stringBytes);
+                break;
+            case TYPE_STRING_SET:
+                record.putInt(setBytes.length);
+                for (byte[] item : setBytes) {
+                    record.putInt(item.length);
+                    record.put(item);
+                }
+                break;
+            default:
+                break;
+        }
+        byte[] bytes = record.array();
+        crc32.reset();
+        crc32.update(bytes, RECORD_HEADER_SIZE, payloadSize);
+        record.putInt(4, (int) crc32.getValue());
+        return bytes;
+    }
+
+    private byte[] encodeClear() {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + 1);
+        record.putInt(1);
+        record.putInt(0);
+        record.put(TYPE_CLEAR);
+        byte[] bytes = record.array();
+        crc32.reset();
+        crc32.update(bytes, RECORD_HEADER_SIZE, 1);
+        record.putInt(4, (int) crc32.getValue());
+        return bytes;
+    }
+
+    /**
+     * 追加一条记录，空间不够时整理或扩容，必须持有this锁调用
+     */
+    private void append(byte[] record) throws IOException {
+        if (writePosition + record.length > buffer.capacity()) {
+            if (garbageSize > 0) {
+                compact(record.length);
+            }
+            if (writePosition + record.length > buffer.capacity()) {
+                grow(writePosition + record.length);
+            }
+        }
+        // 先写内容再写长度，写了一半时长度为0，恢复时会停在这里
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(writePosition + 4);
+        duplicate.put(record, 4, record.length - 4);
+        buffer.putInt(writePosition, record.length - RECORD_HEADER_SIZE);
+        writePosition += record.length;
+    }
+
+    private void grow(int required) throws IOException {
+        long capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("MappedPreferences is too large: " + required);
+        }
+        randomAccessFile.setLength(capacity);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * 把修改写入文件和内存
+     *
+     * @return 发生变化的key
+     */
+    private List<String> write(boolean clear, Map<String, Object> modified, boolean sync) throws IOException {
+        synchronized (this) {
+            if (channel == null) {
+                throw new IOException("MappedPreferences is closed: " + file);
+            }
+            if (!multiProcess) {
+                return writeLocked(clear, modified, sync);
+            }
+            FileLock lock = lockFile.getChannel().lock();
+            try {
+                // 先同步其他进程的写入，再在最新的结尾处追加
+                List<String> changedKeys = sync();
+                long oldGeneration = generation;
+                List<String> writtenKeys = writeLocked(clear, modified, sync);
+                if (!writtenKeys.isEmpty() || clear || generation != oldGeneration) {
+                    publish();
+                }
+                changedKeys.addAll(writtenKeys);
+                return changedKeys;
+            } finally {
+                release(lock);
+            }
+        }
+    }
+
+    /**
+     * 必须持有this锁调用，多进程模式下还需持有文件锁
+     */
+    private List<String> writeLocked(boolean clear, Map<String, Object> modified, boolean sync) throws IOException {
+        List<String> changedKeys = new ArrayList<>(modified.size());
+        if (clear && !values.isEmpty()) {
+            append(encodeClear());
+            garbageSize = writePosition - HEADER_SIZE;
+            values.clear();
+            recordSizes.clear();
+        }
+        for (Map.Entry<String, Object> entry : modified.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (value == this) {
+                if (!values.containsKey(key)) {
+                    continue;
+                }
+                value = null;
+            } else if (value.equals(values.get(key))) {
+                continue;
+            }
+            byte[] record = encode(key, value);
+            append(record);
+            Integer oldSize = recordSizes.remove(key);
+            if (oldSize != null) {
+                garbageSize += oldSize;
+            }
+            if (value == null) {
+                values.remove(key);
+                garbageSize += record.length;
+            } else {
+                values.put(key, value);
+                recordSizes.put(key, record.length);
+            }
+            changedKeys.add(key);
+        }
+        if (garbageSize > COMPACT_THRESHOLD && garbageSize > writePosition / 2) {
+            compact(0);
+        }
+        if (sync) {
+            buffer.force();
+        }
+        return changedKeys;
+    }
+
+    private void notifyListeners(final List<String> changedKeys) {
+        if (changedKeys.isEmpty()) {
+            return;
+        }
+        final List<OnSharedPreferenceChangeListener> targets;
+        synchronized (listeners) {
+            if (listeners.isEmpty()) {
+                return;
+            }
+            targets = new ArrayList<>(listeners.keySet());
+        }
+        Runnable notifyTask = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = changedKeys.size() - 1; i >= 0; i--) {
+                    for (OnSharedPreferenceChangeListener listener : targets) {
+                        if (listener != null) {
+                            listener.onSharedPreferenceChanged(MappedPreferences.this, changedKeys.get(i));
+                        }
+                    }
+                }
+            }
+        };
+        // 与SharedPreferences一致，在主线程回调
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            notifyTask.run();
+        } else {
+            new Handler(Looper.getMainLooper()).post(notifyTask);
+        }
+    }
+
+    private final class EditorImpl implements Editor {
+
+        private final Map<String, Object> modified = new LinkedHashMap<>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(String key, String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            return put(key, values == null ? null : new HashSet<>(values));
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor remove(String key) {
+            synchronized (this) {
+                // 用外部类实例标记删除
+                modified.put(key, MappedPreferences.this);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            synchronized (this) {
+                clear = true;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return commit(true);
+        }
+
+        /**
+         * 内存和映射文件立即更新，只是不等待落盘
+         */
+        @Override
+        public void apply() {
+            commit(false);
+        }
+
+        private Editor put(String key, Object value) {
+            synchronized (this) {
+                modified.put(key, value == null ? MappedPreferences.this : value);
+            }
+            return this;
+        }
+
+        private boolean commit(boolean sync) {
+            Map<String, Object> changes;
+            boolean clearAll;
+            synchronized (this) {
+                changes = new LinkedHashMap<>(modified);
+                clearAll = clear;
+                modified.clear();
+                clear = false;
+            }
+            try {
+                notifyListeners(write(clearAll, changes, sync));
+                return true;
+            } catch (IOException e) {
+                XLog.e("MappedPreferences", "write " + file + " failed", e);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.xuxin.utils;
+
+import com.xuxin.utils.listener.OnProgressListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多个线程共同完成一个任务时汇总进度，{@link DirectoryCopyTask}、{@link FileDigestTask}和{@link ZipUtils#unzip}使用
+ * 各线程把新处理的字节数加到同一个计数上，每增加{@link FileUtils#DEFAULT_PROGRESS_INTERVAL}字节
+ * (或达到总数时)由其中一个线程回调；回调在内部的锁内进行，落后的进度被丢弃，保证回调的进度递增
+ */
+final class ProgressAggregator {
+
+    private final OnProgressListener listener;
+    private final AtomicLong current = new AtomicLong();
+    private final AtomicLong reported = new AtomicLong();
+    /**
+     * 使用私有的锁对象，调用方在listener上加锁不会影响回调
+     */
+    private final Object lock = new Object();
+    /**
+     * 最后一次回调的进度，只在lock内访问
+     */
+    private long delivered = -1;
+    private volatile long total = -1;
+
+    /**
+     * @param listener 进度回调，可以为null，为null时只计数
+     */
+    ProgressAggregator(OnProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 设置总字节数，需要在开始计数之前调用
+     */
+    void setTotal(long total) {
+        this.total = total;
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return 已处理的字节数
+     */
+    long get() {
+        return current.get();
+    }
+
+    /**
+     * 增加已处理的字节数，距上次回调足够多时回调进度，可以在多个线程中同时调用
+     *
+     * @return 增加后的字节数
+     */
+    long add(long bytes) {
+        long value = current.addAndGet(bytes);
+        if (listener == null) {
+            return value;
+        }
+        while (true) {
+            long last = reported.get();
+            if (last >= value || value - last < FileUtils.DEFAULT_PROGRESS_INTERVAL && value != total) {
+                return value;
+            }
+            if (reported.compareAndSet(last, value)) {
+                break;
+            }
+        }
+        synchronized (lock) {
+            if (value > delivered) {
+                delivered = value;
+                listener.onProgress(value, total);
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,232 @@
+package com.xuxin.utils;
+
+import com.xuxin.utils.listener.OnProgressListener;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * 可断点续传的文件复制，由{@link FileUtils#copyFileResumable}调用
+ * 数据先写入target.part，每个块的序号和CRC32记录在target.journal中，
+ * 每隔{@link #CHECKPOINT_BLOCKS}个块把数据刷到磁盘后才写入日志，日志中的块都已落盘
+ * 中断后再次调用时从最后一个校验通过的块之后继续，全部完成后把临时文件重命名为目标文件
+ * <p>
+ * 日志: [magic(4)][版本(4)][块大小(4)][源文件长度(8)][源文件修改时间(8)] 之后每块一条[序号(4)][CRC32(4)]
+ * 源文件的长度或修改时间变化时从头复制
+ */
+final class ResumableCopier {
+
+    private static final int MAGIC = 0x58435046;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+    private static final int RECORD_SIZE = 8;
+    static final int BLOCK_SIZE = 1024 * 1024;
+    /**
+     * 每16个块(16MB)落盘一次
+     */
+    private static final int CHECKPOINT_BLOCKS = 16;
+
+    private ResumableCopier() {
+        throw new UnsupportedOperationException("You do not need to instantiate!");
+    }
+
+    static File partFile(File target) {
+        return new File(target.getPath() + ".part");
+    }
+
+    static File journalFile(File target) {
+        return new File(target.getPath() + ".journal");
+    }
+
+    /**
+     * @return 本次复制的字节数，不包括之前已完成的部分
+     */
+    static long copy(File source, File target, OnProgressListener listener, long progressInterval)
+            throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        long length = source.length();
+        long lastModified = source.lastModified();
+        File part = partFile(target);
+        File journal = journalFile(target);
+        byte[] block = new byte[BLOCK_SIZE];
+        int[] crcs = new int[(int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE)];
+        int resumed = readJournal(journal, length, lastModified, crcs);
+
+        FileInputStream in = new FileInputStream(source);
+        RandomAccessFile out = null;
+        RandomAccessFile log = null;
+        try {
+            out = new RandomAccessFile(part, "rw");
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            resumed = verify(outChannel, block, crcs, resumed, length);
+            log = new RandomAccessFile(journal, "rw");
+            if (resumed == 0) {
+                outChannel.truncate(0);
+                log.setLength(0);
+                log.writeInt(MAGIC);
+                log.writeInt(VERSION);
+                log.writeInt(BLOCK_SIZE);
+                log.writeLong(length);
+                log.writeLong(lastModified);
+                log.getFD().sync();
+            } else {
+                log.setLength(HEADER_SIZE + (long) resumed * RECORD_SIZE);
+                log.seek(log.length());
+            }
+
+            long start = (long) resumed * BLOCK_SIZE;
+            long position = start;
+            long reported = position;
+            if (listener != null && position > 0) {
+                listener.onProgress(position, length);
+            }
+            CRC32 crc = new CRC32();
+            byte[] records = new byte[CHECKPOINT_BLOCKS * RECORD_SIZE];
+            int pending = 0;
+            for (int index = resumed; index < crcs.length; index++) {
+                int size = (int) Math.min(BLOCK_SIZE, length - position);
+                readFully(inChannel, ByteBuffer.wrap(block, 0, size), position);
+                crc.reset();
+                crc.update(block, 0, size);
+                ByteBuffer buffer = ByteBuffer.wrap(block, 0, size);
+                long writePosition = position;
+                while (buffer.hasRemaining()) {
+                    writePosition += outChannel.write(buffer, writePosition);
+                }
+                putInt(records, pending * RECORD_SIZE, index);
+                putInt(records, pending * RECORD_SIZE + 4, (int) crc.getValue());
+                pending++;
+                position += size;
+                if (pending == CHECKPOINT_BLOCKS || index == crcs.length - 1) {
+                    // 数据落盘后才写日志，日志里出现的块在断电后也是完整的
+                    outChannel.force(false);
+                    log.write(records, 0, pending * RECORD_SIZE);
+                    log.getFD().sync();
+                    pending = 0;
+                }
+                if (listener != null && position - reported >= progressInterval) {
+                    reported = position;
+                    listener.onProgress(position, length);
+                }
+            }
+            outChannel.truncate(length);
+            out.close();
+            out = null;
+            if (source.length() != length || source.lastModified() != lastModified) {
+                throw new IOException(source + " changed during copy");
+            }
+            // renameTo在Linux上原子地替换已存在的目标，只有失败时(部分文件系统不能覆盖)才先删除目标
+            if (!part.renameTo(target) && (!target.exists() || !target.delete() || !part.renameTo(target))) {
+                throw new IOException("can not rename " + part + " to " + target);
+            }
+            log.close();
+            log = null;
+            journal.delete();
+            if (listener != null && (reported != position || length == 0)) {
+                listener.onProgress(position, length);
+            }
+            return position - start;
+        } finally {
+            in.close();
+            if (out != null) {
+                out.close();
+            }
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * 读取日志中连续的块记录
+     *
+     * @return 已完成的块数，日志不存在或与源文件不符时返回0
+     */
+    private static int readJournal(File journal, long length, long lastModified, int[] crcs) {
+        if (!journal.exists() || journal.length() < HEADER_SIZE) {
+            return 0;
+        }
+        DataInputStream in = null;
+        int count = 0;
+        try {
+            in = new DataInputStream(new FileInputStream(journal));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != BLOCK_SIZE
+                    || in.readLong() != length || in.readLong() != lastModified) {
+                return 0;
+            }
+            while (count < crcs.length) {
+                int index = in.readInt();
+                int crc = in.readInt();
+                if (index != count) {
+                    break;
+                }
+                crcs[count++] = crc;
+            }
+        } catch (EOFException e) {
+            // 最后一条记录不完整
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 从后往前校验临时文件中已完成的块，返回最后一个校验通过的块之后的序号
+     */
+    private static int verify(FileChannel channel, byte[] block, int[] crcs, int completed, long length)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        long available = channel.size();
+        for (int index = completed - 1; index >= 0; index--) {
+            long position = (long) index * BLOCK_SIZE;
+            int size = (int) Math.min(BLOCK_SIZE, length - position);
+            if (position + size > available) {
+                continue;
+            }
+            readFully(channel, ByteBuffer.wrap(block, 0, size), position);
+            crc.reset();
+            crc.update(block, 0, size);
+            if ((int) crc.getValue() == crcs[index]) {
+                return index + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,36 @@
+package com.xuxin.utils;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link DirectoryCopyTask}和{@link FileDigestTask}的线程池
+ * 每个任务使用自己的固定大小线程池，提交完所有文件后shutdown，线程在任务结束后退出
+ */
+final class TaskExecutors {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private TaskExecutors() {
+    }
+
+    /**
+     * @param threads 线程数
+     * @param name    线程名前缀
+     * @return 守护线程组成的线程池，队列不限长度
+     */
+    static ThreadPoolExecutor newFixedThreadPool(int threads, final String name) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -4,14 +4,47 @@ import android.util.Log;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * 日志打印控制类
  * 正式发布版本时,LEVEL调为0,将不打印所有LOG
+ * 调用{@link #startAsync(int, int)}后日志进入环形缓冲区，由后台线程输出，调用线程只做入队
+ * 可以按TAG单独设置级别{@link #setTagLevel(String, int)}和限流{@link #setTagRateLimit(String, int, int)}
  */
 public class XLog {
     private final static String TAG = "XLog";
 
+    /**
+     * 异步模式缓冲区满时丢弃新日志
+     */
+    public static final int FULL_DROP = 0;
+    /**
+     * 异步模式缓冲区满时等待写线程腾出空间
+     */
+    public static final int FULL_BLOCK = 1;
+    /**
+     * 异步模式缓冲区满时每N条等待保留一条，其余丢弃
+     */
+    public static final int FULL_SAMPLE = 2;
+
+    private static volatile XLogAsyncWriter asyncWriter;
+    private static volatile XLogSink[] sinks = new XLogSink[0];
+    /**
+     * 按TAG的配置，写时复制，没有任何配置时为null，打印时不做查找
+     */
+    private static volatile Map<String, TagConfig> tagConfigs;
+    /**
+     * 异常去重，默认同一调用栈60秒内只打印一次完整堆栈
+     */
+    private static volatile XLogThrowableFilter throwableFilter = new XLogThrowableFilter(60 * 1000, 128);
+
+    /**
+     * {@link #setTagLevel(String, int)}使用，表示关闭该TAG的所有日志
+     */
+    public static final int TAG_OFF = Integer.MAX_VALUE;
+
     private static int LEVEL = 6;
 
     private static final int V = 1;
@@ -28,6 +61,194 @@ public class XLog {
         LEVEL = 6;
     }
 
+    /**
+     * 设置某个TAG的最低打印级别，不影响其他TAG，全局关闭时依然不打印
+     *
+     * @param tag      TAG
+     * @param priority 最低打印级别 Log.VERBOSE ~ Log.ERROR，或{@link #TAG_OFF}
+     */
+    public static synchronized void setTagLevel(String tag, int priority) {
+        Map<String, TagConfig> updated = copyTagConfigs();
+        TagConfig old = updated.get(tag);
+        updated.put(tag, new TagConfig(priority, old != null ? old.permitsPerSecond : 0,
+                old != null ? old.burst : 0));
+        tagConfigs = updated;
+    }
+
+    /**
+     * 限制某个TAG每秒打印的条数(令牌桶)，超出的日志被丢弃，
+     * 恢复打印时先输出一行"N messages suppressed"
+     *
+     * @param tag              TAG
+     * @param permitsPerSecond 每秒允许打印的条数，小于等于0表示不限制
+     * @param burst            允许的突发条数
+     */
+    public static synchronized void setTagRateLimit(String tag, int permitsPerSecond, int burst) {
+        Map<String, TagConfig> updated = copyTagConfigs();
+        TagConfig old = updated.get(tag);
+        updated.put(tag, new TagConfig(old != null ? old.minPriority : Log.VERBOSE, permitsPerSecond, burst));
+        tagConfigs = updated;
+    }
+
+    /**
+     * 设置异常去重: 同一调用栈在时间窗口内只打印一次完整堆栈，之后只打印指纹和重复次数
+     *
+     * @param windowMillis    时间窗口，小于等于0表示关闭去重，每次都打印完整堆栈
+     * @param maxFingerprints 最多记录的调用栈个数，超出时淘汰最久未出现的
+     */
+    public static void setThrowableDedup(long windowMillis, int maxFingerprints) {
+        throwableFilter = windowMillis > 0 ? new XLogThrowableFilter(windowMillis, maxFingerprints) : null;
+    }
+
+    /**
+     * 清除所有TAG的级别和限流设置
+     */
+    public static synchronized void clearTagConfigs() {
+        tagConfigs = null;
+    }
+
+    /**
+     * @return null表示需要打印完整堆栈，否则返回代替堆栈的简短说明
+     */
+    private static String filterThrowable(Throwable tr) {
+        XLogThrowableFilter filter = throwableFilter;
+        return filter == null || tr == null ? null : filter.filter(tr);
+    }
+
+    private static Map<String, TagConfig> copyTagConfigs() {
+        Map<String, TagConfig> current = tagConfigs;
+        return current == null ? new HashMap<String, TagConfig>() : new HashMap<>(current);
+    }
+
+    /**
+     * 只判断全局级别和TAG级别，不消耗限流的令牌，参数化日志在装箱参数之前调用
+     */
+    private static boolean isEnabled(int level, String tag) {
+        if (LEVEL < level) {
+            return false;
+        }
+        Map<String, TagConfig> configs = tagConfigs;
+        TagConfig config = configs == null ? null : configs.get(tag);
+        // XLog的级别比Log的级别小1
+        return config == null || level + 1 >= config.minPriority;
+    }
+
+    /**
+     * 全局级别、TAG级别和限流都允许时才打印
+     */
+    private static boolean isLoggable(int level, String tag) {
+        if (LEVEL < level) {
+            return false;
+        }
+        Map<String, TagConfig> configs = tagConfigs;
+        if (configs == null) {
+            return true;
+        }
+        TagConfig config = configs.get(tag);
+        if (config == null) {
+            return true;
+        }
+        // XLog的级别比Log的级别小1
+        if (level + 1 < config.minPriority) {
+            return false;
+        }
+        long suppressed = config.acquire();
+        if (suppressed < 0) {
+            return false;
+        }
+        if (suppressed > 0) {
+            print(Log.WARN, tag, suppressed + " messages suppressed", null);
+        }
+        return true;
+    }
+
+    /**
+     * 开启异步模式，缓冲区满时丢弃新日志
+     *
+     * @param capacity 缓冲区能容纳的日志条数
+     */
+    public static void startAsync(int capacity) {
+        startAsync(capacity, FULL_DROP);
+    }
+
+    /**
+     * 开启异步模式
+     *
+     * @param capacity   缓冲区能容纳的日志条数
+     * @param fullPolicy 缓冲区满时的处理方式 {@link #FULL_DROP} / {@link #FULL_BLOCK} / {@link #FULL_SAMPLE}
+     */
+    public static void startAsync(int capacity, int fullPolicy) {
+        startAsync(capacity, fullPolicy, 10);
+    }
+
+    /**
+     * 开启异步模式
+     *
+     * @param capacity   缓冲区能容纳的日志条数
+     * @param fullPolicy 缓冲区满时的处理方式 {@link #FULL_DROP} / {@link #FULL_BLOCK} / {@link #FULL_SAMPLE}
+     * @param sampleRate {@link #FULL_SAMPLE}时每sampleRate条保留一条
+     */
+    public static synchronized void startAsync(int capacity, int fullPolicy, int sampleRate) {
+        stopAsync();
+        asyncWriter = new XLogAsyncWriter(capacity, fullPolicy, sampleRate);
+    }
+
+    /**
+     * 输出缓冲区中剩余的日志后关闭异步模式
+     */
+    public static synchronized void stopAsync() {
+        XLogAsyncWriter writer = asyncWriter;
+        if (writer != null) {
+            asyncWriter = null;
+            writer.shutdown(1000);
+        }
+    }
+
+    /**
+     * 等待缓冲区中的日志全部输出，例如在崩溃处理中调用
+     */
+    public static void flush() {
+        XLogAsyncWriter writer = asyncWriter;
+        if (writer != null) {
+            writer.flush(1000);
+        }
+        for (XLogSink sink : sinks) {
+            sink.flush();
+        }
+    }
+
+    /**
+     * 添加日志输出目标，例如{@link XLogFileSink}，日志同时输出到logcat和所有sink
+     * 同步模式下sink在调用线程执行，建议配合异步模式使用
+     *
+     * @param sink 输出目标
+     */
+    public static synchronized void addSink(XLogSink sink) {
+        XLogSink[] current = sinks;
+        XLogSink[] updated = new XLogSink[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = sink;
+        sinks = updated;
+    }
+
+    /**
+     * 移除日志输出目标
+     *
+     * @param sink 输出目标
+     */
+    public static synchronized void removeSink(XLogSink sink) {
+        XLogSink[] current = sinks;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == sink) {
+                XLogSink[] updated = new XLogSink[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                sinks = updated;
+                return;
+            }
+        }
+    }
+
     public static void v(String msg) {
         v(TAG, msg);
     }
@@ -37,8 +258,8 @@ public class XLog {
             msg = "data is null";
         }
 
-        if (LEVEL >= V) {
-            Log.v(TAG, msg);
+        if (isLoggable(V, TAG)) {
+            print(Log.VERBOSE, TAG, msg, null);
         }
     }
 
@@ -51,8 +272,8 @@ public class XLog {
             msg = "data is null";
         }
 
-        if (LEVEL >= D) {
-            Log.d(TAG, msg);
+        if (isLoggable(D, TAG)) {
+            print(Log.DEBUG, TAG, msg, null);
         }
     }
 
@@ -65,8 +286,8 @@ public class XLog {
             msg = "data is null";
         }
 
-        if (LEVEL >= I) {
-            Log.i(TAG, msg);
+        if (isLoggable(I, TAG)) {
+            print(Log.INFO, TAG, msg, null);
         }
     }
 
@@ -79,8 +300,8 @@ public class XLog {
             msg = "data is null";
         }
 
-        if (LEVEL >= W) {
-            Log.w(TAG, msg);
+        if (isLoggable(W, TAG)) {
+            print(Log.WARN, TAG, msg, null);
         }
     }
 
@@ -110,65 +331,86 @@ public class XLog {
             }
         }
 
-        if (LEVEL >= E) {
-            Log.e(TAG, msg);
+        if (isLoggable(E, TAG)) {
+            print(Log.ERROR, TAG, msg, null);
         }
     }
 
     public static void e(String TAG, int msg) {
-        if (LEVEL >= E) {
-            Log.e(TAG, msg + "");
+        if (isLoggable(E, TAG)) {
+            print(Log.ERROR, TAG, String.valueOf(msg), null);
         }
     }
 
     public static void e(String TAG, boolean msg) {
-        if (LEVEL >= E) {
-            Log.e(TAG, msg + "");
+        if (isLoggable(E, TAG)) {
+            print(Log.ERROR, TAG, String.valueOf(msg), null);
         }
     }
 
     public static void e(String TAG, String msg, Throwable tr) {
-        if (LEVEL >= E) {
-            Log.e(TAG, msg, tr);
+        if (isLoggable(E, TAG)) {
+            String repeated = filterThrowable(tr);
+            if (repeated == null) {
+                print(Log.ERROR, TAG, msg, tr);
+            } else {
+                print(Log.ERROR, TAG, msg + '\n' + repeated, null);
+            }
         }
     }
 
     public static void e(String TAG, float msg) {
-        if (LEVEL >= E) {
-            Log.e(TAG, msg + "");
+        if (isLoggable(E, TAG)) {
+            print(Log.ERROR, TAG, String.valueOf(msg), null);
         }
     }
 
     public static void e(Exception e) {
-        if (LEVEL >= E) {
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            e.printStackTrace(pw);
-            XLog.e(sw.toString());
+        if (isLoggable(E, TAG)) {
+            String repeated = filterThrowable(e);
+            if (repeated == null) {
+                // 堆栈在输出时才转成字符串，异步模式下不占用调用线程
+                print(Log.ERROR, TAG, null, e);
+            } else {
+                print(Log.ERROR, TAG, repeated, null);
+            }
         }
     }
 
     public static void e(Throwable e) {
-        if (LEVEL >= E) {
+        if (isLoggable(E, TAG)) {
+            String repeated = filterThrowable(e);
+            if (repeated != null) {
+                print(Log.ERROR, TAG, repeated, null);
+                return;
+            }
+            // 所有栈帧合并为一条日志输出
+            StringBuilder sb = new StringBuilder();
             for (StackTraceElement element : e.getStackTrace()) {
-                Log.e(TAG, "======>>>>>>>>>>>>ClassName:" + element.getClassName() + "\n"
-                        + "MethodName:" + element.getMethodName() + "\n"
-                        + "LineNumber:" + element.getLineNumber() + "\n");
+                sb.append("======>>>>>>>>>>>>ClassName:").append(element.getClassName()).append('\n')
+                        .append("MethodName:").append(element.getMethodName()).append('\n')
+                        .append("LineNumber:").append(element.getLineNumber()).append('\n');
             }
+            print(Log.ERROR, TAG, sb.length() > 0 ? sb.toString() : String.valueOf(e), null);
         }
     }
 
     public static void e(String TAG, Exception e) {
-        if (LEVEL >= E) {
+        if (isLoggable(E, TAG)) {
+            String repeated = filterThrowable(e);
+            if (repeated != null) {
+                print(Log.ERROR, TAG, repeated, null);
+                return;
+            }
             StackTraceElement[] stackTrace = e.getStackTrace();
             XLog.eLine();
-            Log.e(TAG, e.getLocalizedMessage());
+            print(Log.ERROR, TAG, e.getLocalizedMessage(), null);
             if (stackTrace.length > 3) {
                 for (int i = 0; i < 3; i++) {
                     StackTraceElement element = stackTrace[i];
-                    Log.e(TAG, "-----name----->" + element.getClassName());
-                    Log.e(TAG, "-----medthod----->" + element.getMethodName());
-                    Log.e(TAG, "-----num----->" + element.getLineNumber());
+                    print(Log.ERROR, TAG, "-----name----->" + element.getClassName(), null);
+                    print(Log.ERROR, TAG, "-----medthod----->" + element.getMethodName(), null);
+                    print(Log.ERROR, TAG, "-----num----->" + element.getLineNumber(), null);
                 }
             }
             XLog.eLine();
@@ -176,7 +418,7 @@ public class XLog {
     }
 
     public static void e(String[] params) {
-        if (LEVEL >= E) {
+        if (isLoggable(E, TAG)) {
             if (params != null) {
                 XLog.eLine();
                 for (String s : params) {
@@ -186,5 +428,496 @@ public class XLog {
             }
         }
     }
-}
 
+    /*********************** 参数化日志 ***********************/
+    /*
+     * XLog.d(TAG, "x={} y={}", x, y)
+     * 先判断级别再格式化，日志关闭(全局或按TAG)时不拼接字符串，也不分配任何对象；
+     * 基本类型的重载直接追加到StringBuilder，打开时也不装箱
+     * 格式化使用线程内复用的StringBuilder，参数多于{}时多余的参数被忽略，少于时保留{}
+     */
+    public static void v(String TAG, String format, Object arg) {
+        if (isEnabled(V, TAG)) {
+            log(V, Log.VERBOSE, TAG, format, arg);
+        }
+    }
+
+    public static void v(String TAG, String format, Object arg1, Object arg2) {
+        if (isEnabled(V, TAG)) {
+            log(V, Log.VERBOSE, TAG, format, arg1, arg2);
+        }
+    }
+
+    public static void v(String TAG, String format, Object... args) {
+        log(V, Log.VERBOSE, TAG, format, args);
+    }
+
+    public static void v(String TAG, String format, long arg) {
+        if (isEnabled(V, TAG)) {
+            log(V, Log.VERBOSE, TAG, format, arg);
+        }
+    }
+
+    public static void v(String TAG, String format, float arg) {
+        if (isEnabled(V, TAG)) {
+            log(V, Log.VERBOSE, TAG, format, arg);
+        }
+    }
+
+    public static void v(String TAG, String format, double arg) {
+        if (isEnabled(V, TAG)) {
+            log(V, Log.VERBOSE, TAG, format, arg);
+        }
+    }
+
+    public static void v(String TAG, String format, boolean arg) {
+        if (isEnabled(V, TAG)) {
+            log(V, Log.VERBOSE, TAG, format, arg);
+        }
+    }
+
+    public static void v(String TAG, String format, long arg1, long arg2) {
+        if (isEnabled(V, TAG)) {
+            log(V, Log.VERBOSE, TAG, format, arg1, arg2);
+        }
+    }
+
+    public static void d(String TAG, String format, Object arg) {
+        if (isEnabled(D, TAG)) {
+            log(D, Log.DEBUG, TAG, format, arg);
+        }
+    }
+
+    public static void d(String TAG, String format, Object arg1, Object arg2) {
+        if (isEnabled(D, TAG)) {
+            log(D, Log.DEBUG, TAG, format, arg1, arg2);
+        }
+    }
+
+    public static void d(String TAG, String format, Object... args) {
+        log(D, Log.DEBUG, TAG, format, args);
+    }
+
+    public static void d(String TAG, String format, long arg) {
+        if (isEnabled(D, TAG)) {
+            log(D, Log.DEBUG, TAG, format, arg);
+        }
+    }
+
+    public static void d(String TAG, String format, float arg) {
+        if (isEnabled(D, TAG)) {
+            log(D, Log.DEBUG, TAG, format, arg);
+        }
+    }
+
+    public static void d(String TAG, String format, double arg) {
+        if (isEnabled(D, TAG)) {
+            log(D, Log.DEBUG, TAG, format, arg);
+        }
+    }
+
+    public static void d(String TAG, String format, boolean arg) {
+        if (isEnabled(D, TAG)) {
+            log(D, Log.DEBUG, TAG, format, arg);
+        }
+    }
+
+    public static void d(String TAG, String format, long arg1, long arg2) {
+        if (isEnabled(D, TAG)) {
+            log(D, Log.DEBUG, TAG, format, arg1, arg2);
+        }
+    }
+
+    public static void i(String TAG, String format, Object arg) {
+        if (isEnabled(I, TAG)) {
+            log(I, Log.INFO, TAG, format, arg);
+        }
+    }
+
+    public static void i(String TAG, String format, Object arg1, Object arg2) {
+        if (isEnabled(I, TAG)) {
+            log(I, Log.INFO, TAG, format, arg1, arg2);
+        }
+    }
+
+    public static void i(String TAG, String format, Object... args) {
+        log(I, Log.INFO, TAG, format, args);
+    }
+
+    public static void i(String TAG, String format, long arg) {
+        if (isEnabled(I, TAG)) {
+            log(I, Log.INFO, TAG, format, arg);
+        }
+    }
+
+    public static void i(String TAG, String format, float arg) {
+        if (isEnabled(I, TAG)) {
+            log(I, Log.INFO, TAG, format, arg);
+        }
+    }
+
+    public static void i(String TAG, String format, double arg) {
+        if (isEnabled(I, TAG)) {
+            log(I, Log.INFO, TAG, format, arg);
+        }
+    }
+
+    public static void i(String TAG, String format, boolean arg) {
+        if (isEnabled(I, TAG)) {
+            log(I, Log.INFO, TAG, format, arg);
+        }
+    }
+
+    public static void i(String TAG, String format, long arg1, long arg2) {
+        if (isEnabled(I, TAG)) {
+            log(I, Log.INFO, TAG, format, arg1, arg2);
+        }
+    }
+
+    public static void w(String TAG, String format, Object arg) {
+        if (isEnabled(W, TAG)) {
+            log(W, Log.WARN, TAG, format, arg);
+        }
+    }
+
+    public static void w(String TAG, String format, Object arg1, Object arg2) {
+        if (isEnabled(W, TAG)) {
+            log(W, Log.WARN, TAG, format, arg1, arg2);
+        }
+    }
+
+    public static void w(String TAG, String format, Object... args) {
+        log(W, Log.WARN, TAG, format, args);
+    }
+
+    public static void w(String TAG, String format, long arg) {
+        if (isEnabled(W, TAG)) {
+            log(W, Log.WARN, TAG, format, arg);
+        }
+    }
+
+    public static void w(String TAG, String format, float arg) {
+        if (isEnabled(W, TAG)) {
+            log(W, Log.WARN, TAG, format, arg);
+        }
+    }
+
+    public static void w(String TAG, String format, double arg) {
+        if (isEnabled(W, TAG)) {
+            log(W, Log.WARN, TAG, format, arg);
+        }
+    }
+
+    public static void w(String TAG, String format, boolean arg) {
+        if (isEnabled(W, TAG)) {
+            log(W, Log.WARN, TAG, format, arg);
+        }
+    }
+
+    public static void w(String TAG, String format, long arg1, long arg2) {
+        if (isEnabled(W, TAG)) {
+            log(W, Log.WARN, TAG, format, arg1, arg2);
+        }
+    }
+
+    public static void e(String TAG, String format, Object arg) {
+        if (isEnabled(E, TAG)) {
+            log(E, Log.ERROR, TAG, format, arg);
+        }
+    }
+
+    public static void e(String TAG, String format, Object arg1, Object arg2) {
+        if (isEnabled(E, TAG)) {
+            log(E, Log.ERROR, TAG, format, arg1, arg2);
+        }
+    }
+
+    public static void e(String TAG, String format, Object... args) {
+        log(E, Log.ERROR, TAG, format, args);
+    }
+
+    public static void e(String TAG, String format, long arg) {
+        if (isEnabled(E, TAG)) {
+            log(E, Log.ERROR, TAG, format, arg);
+        }
+    }
+
+    public static void e(String TAG, String format, float arg) {
+        if (isEnabled(E, TAG)) {
+            log(E, Log.ERROR, TAG, format, arg);
+        }
+    }
+
+    public static void e(String TAG, String format, double arg) {
+        if (isEnabled(E, TAG)) {
+            log(E, Log.ERROR, TAG, format, arg);
+        }
+    }
+
+    public static void e(String TAG, String format, boolean arg) {
+        if (isEnabled(E, TAG)) {
+            log(E, Log.ERROR, TAG, format, arg);
+        }
+    }
+
+    public static void e(String TAG, String format, long arg1, long arg2) {
+        if (isEnabled(E, TAG)) {
+            log(E, Log.ERROR, TAG, format, arg1, arg2);
+        }
+    }
+
+    /**
+     * 对象参数的出口，调用方已经用{@link #isEnabled}判断过级别，这里再经过限流后格式化
+     */
+    private static void log(int level, int priority, String tag, String format, Object... args) {
+        if (isLoggable(level, tag)) {
+            print(priority, tag, format, format(format, args), null);
+        }
+    }
+
+    /*
+     * 基本类型参数的出口，直接追加到线程内复用的StringBuilder，不装箱也不分配参数数组
+     */
+    private static void log(int level, int priority, String tag, String format, long arg) {
+        if (isLoggable(level, tag)) {
+            StringBuilder sb = formatBuffer();
+            int position = start(sb, format);
+            if (position >= 0) {
+                sb.append(arg);
+            }
+            print(priority, tag, format, finish(sb, format, position), null);
+        }
+    }
+
+    private static void log(int level, int priority, String tag, String format, float arg) {
+        if (isLoggable(level, tag)) {
+            StringBuilder sb = formatBuffer();
+            int position = start(sb, format);
+            if (position >= 0) {
+                sb.append(arg);
+            }
+            print(priority, tag, format, finish(sb, format, position), null);
+        }
+    }
+
+    private static void log(int level, int priority, String tag, String format, double arg) {
+        if (isLoggable(level, tag)) {
+            StringBuilder sb = formatBuffer();
+            int position = start(sb, format);
+            if (position >= 0) {
+                sb.append(arg);
+            }
+            print(priority, tag, format, finish(sb, format, position), null);
+        }
+    }
+
+    private static void log(int level, int priority, String tag, String format, boolean arg) {
+        if (isLoggable(level, tag)) {
+            StringBuilder sb = formatBuffer();
+            int position = start(sb, format);
+            if (position >= 0) {
+                sb.append(arg);
+            }
+            print(priority, tag, format, finish(sb, format, position), null);
+        }
+    }
+
+    private static void log(int level, int priority, String tag, String format, long arg1, long arg2) {
+        if (isLoggable(level, tag)) {
+            StringBuilder sb = formatBuffer();
+            int position = start(sb, format);
+            if (position >= 0) {
+                sb.append(arg1);
+                position = next(sb, format, position);
+                if (position >= 0) {
+                    sb.append(arg2);
+                }
+            }
+            print(priority, tag, format, finish(sb, format, position), null);
+        }
+    }
+
+    /**
+     * 追加第一个{}之前的内容
+     *
+     * @return {}之后的位置，format为null或没有{}时返回-1
+     */
+    private static int start(StringBuilder sb, String format) {
+        return format == null ? -1 : next(sb, format, 0);
+    }
+
+    /**
+     * 追加最后一个参数之后的内容并生成日志
+     */
+    private static String finish(StringBuilder sb, String format, int position) {
+        if (format == null) {
+            return "data is null";
+        }
+        if (position >= 0) {
+            sb.append(format, position, format.length());
+        }
+        return sb.toString();
+    }
+
+    private static final ThreadLocal<StringBuilder> FORMAT_BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private static StringBuilder formatBuffer() {
+        StringBuilder sb = FORMAT_BUFFER.get();
+        if (sb.capacity() > 8 * 1024) {
+            // 避免偶尔的超长日志让缓冲区一直占用大量内存
+            sb = new StringBuilder(256);
+            FORMAT_BUFFER.set(sb);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    /**
+     * 把from开始到下一个{}之前的内容追加到sb
+     *
+     * @return {}之后的位置，没有{}时追加剩余全部内容并返回-1
+     */
+    private static int next(StringBuilder sb, String format, int from) {
+        int index = format.indexOf("{}", from);
+        if (index < 0) {
+            sb.append(format, from, format.length());
+            return -1;
+        }
+        sb.append(format, from, index);
+        return index + 2;
+    }
+
+    private static String format(String format, Object[] args) {
+        if (format == null) {
+            return "data is null";
+        }
+        StringBuilder sb = formatBuffer();
+        int position = 0;
+        for (int i = 0; args != null && i < args.length && position >= 0; i++) {
+            position = next(sb, format, position);
+            if (position >= 0) {
+                sb.append(args[i]);
+            }
+        }
+        if (position >= 0) {
+            sb.append(format, position, format.length());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 所有日志的出口，异步模式下入队，否则直接输出
+     */
+    private static void print(int priority, String tag, String msg, Throwable tr) {
+        print(priority, tag, null, msg, tr);
+    }
+
+    /**
+     * @param format 参数化日志的格式，供sink使用，例如{@link XLogBinarySink}按格式压缩
+     */
+    private static void print(int priority, String tag, String format, String msg, Throwable tr) {
+        XLogAsyncWriter writer = asyncWriter;
+        if (writer != null) {
+            writer.offer(priority, tag, format, msg, tr);
+        } else {
+            write(priority, tag, format, msg, tr);
+        }
+    }
+
+    /**
+     * 由异步写线程调用
+     */
+    static void dispatch(XLogEvent event) {
+        event.text = render(event.message, event.throwable);
+        Log.println(event.priority, event.tag, event.text);
+        for (XLogSink sink : sinks) {
+            sink.write(event);
+        }
+    }
+
+    /**
+     * 由异步写线程调用，报告缓冲区满时丢弃的日志条数
+     */
+    static void dispatchDropped(long count) {
+        write(Log.WARN, TAG, null, count + " log events dropped, buffer is full", null);
+    }
+
+    private static void write(int priority, String tag, String format, String msg, Throwable tr) {
+        XLogSink[] targets = sinks;
+        if (targets.length == 0) {
+            Log.println(priority, tag, render(msg, tr));
+            return;
+        }
+        XLogEvent event = new XLogEvent();
+        event.set(System.currentTimeMillis(), priority, tag, format, msg, tr);
+        dispatch(event);
+    }
+
+    private static String render(String msg, Throwable tr) {
+        if (tr == null) {
+            return msg;
+        } else if (msg == null) {
+            return getStackTraceString(tr);
+        } else {
+            return msg + '\n' + getStackTraceString(tr);
+        }
+    }
+
+    private static String getStackTraceString(Throwable tr) {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        tr.printStackTrace(pw);
+        pw.flush();
+        return sw.toString();
+    }
+
+    /**
+     * 单个TAG的级别和令牌桶
+     */
+    private static final class TagConfig {
+
+        final int minPriority;
+        final int permitsPerSecond;
+        final int burst;
+        private double tokens;
+        private long lastRefill;
+        private long suppressed;
+
+        TagConfig(int minPriority, int permitsPerSecond, int burst) {
+            this.minPriority = minPriority;
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = Math.max(1, burst);
+            tokens = this.burst;
+            lastRefill = System.nanoTime();
+        }
+
+        /**
+         * 取一个令牌
+         *
+         * @return -1表示被限流，否则返回上次放行后被丢弃的条数
+         */
+        long acquire() {
+            if (permitsPerSecond <= 0) {
+                return 0;
+            }
+            synchronized (this) {
+                long now = System.nanoTime();
+                tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerSecond / 1e9);
+                lastRefill = now;
+                if (tokens < 1) {
+                    suppressed++;
+                    return -1;
+                }
+                tokens -= 1;
+                long count = suppressed;
+                suppressed = 0;
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.xuxin.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * XLog异步模式的有界无锁环形缓冲区和后台写线程
+ * 多个线程写入，只有一个后台线程读取，事件对象预先分配循环使用
+ * 每个槽位有一个序号: 等于pos表示可写，等于pos+1表示已写入可读，读完后设为pos+capacity留给下一圈
+ */
+class XLogAsyncWriter implements Runnable {
+
+    private static final long PARK_NANOS = 100 * 1000 * 1000L;
+    /**
+     * FULL_BLOCK时等待空位的最长时间，写线程腾出空位时会提前唤醒，这里只是兜底
+     */
+    private static final long BLOCK_WAIT_MILLIS = 10;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final XLogEvent[] events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final int fullPolicy;
+    private final int sampleRate;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    /**
+     * 只由写线程修改
+     */
+    private volatile long head;
+    private volatile boolean waiting;
+    private volatile boolean running = true;
+    private final Thread thread;
+    /**
+     * FULL_BLOCK时等待空位的线程在这个对象上wait
+     */
+    private final Object notFull = new Object();
+    /**
+     * 正在等待空位的线程数，只在notFull锁内修改
+     */
+    private volatile int blockedWriters;
+
+    /**
+     * @param capacity   缓冲区大小，会向上取整为2的幂，最大2^30
+     * @param fullPolicy 缓冲区满时的处理方式 XLog.FULL_DROP / FULL_BLOCK / FULL_SAMPLE
+     * @param sampleRate FULL_SAMPLE时每sampleRate条保留一条
+     */
+    XLogAsyncWriter(int capacity, int fullPolicy, int sampleRate) {
+        int size = 2;
+        int limit = Math.min(capacity, MAX_CAPACITY);
+        while (size < limit) {
+            size <<= 1;
+        }
+        events = new XLogEvent[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            events[i] = new XLogEvent();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        this.fullPolicy = fullPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        thread = new Thread(this, "XLog-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 写入一条日志，不会等待写线程输出
+     * 写线程自己(例如sink中打印日志)遇到缓冲区满时总是丢弃，只有它能腾出空位，等待会卡住
+     *
+     * @return 是否写入，缓冲区满被丢弃时返回false
+     */
+    boolean offer(int priority, String tag, String format, String message, Throwable throwable) {
+        long time = System.currentTimeMillis();
+        if (tryOffer(time, priority, tag, format, message, throwable)) {
+            return true;
+        }
+        boolean block = fullPolicy == XLog.FULL_BLOCK
+                || (fullPolicy == XLog.FULL_SAMPLE && sampleCounter.incrementAndGet() % sampleRate == 0);
+        if (!block || Thread.currentThread() == thread) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        while (running) {
+            synchronized (notFull) {
+                blockedWriters++;
+                try {
+                    LockSupport.unpark(thread);
+                    if (isFull() && running) {
+                        notFull.wait(BLOCK_WAIT_MILLIS);
+                    }
+                } catch (InterruptedException e) {
+                    // 日志调用不能抛出中断，保留中断状态后丢弃这一条
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                    return false;
+                } finally {
+                    blockedWriters--;
+                }
+            }
+            if (tryOffer(time, priority, tag, format, message, throwable)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isFull() {
+        long position = tail.get();
+        return sequences.get((int) position & mask) < position;
+    }
+
+    private boolean tryOffer(long time, int priority, String tag, String format, String message,
+                             Throwable throwable) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events[index].set(time, priority, tag, format, message, throwable);
+                    sequences.lazySet(index, position + 1);
+                    if (waiting) {
+                        LockSupport.unpark(thread);
+                    }
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running || !isEmpty()) {
+            if (!drain()) {
+                waiting = true;
+                if (isEmpty() && running) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                waiting = false;
+            }
+        }
+    }
+
+    /**
+     * @return 是否处理了至少一条日志
+     */
+    private boolean drain() {
+        long position = head;
+        boolean drained = false;
+        while (true) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            XLogEvent event = events[index];
+            try {
+                XLog.dispatch(event);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+            event.clear();
+            sequences.lazySet(index, position + mask + 1);
+            position++;
+            head = position;
+            drained = true;
+        }
+        if (drained && blockedWriters > 0) {
+            synchronized (notFull) {
+                notFull.notifyAll();
+            }
+        }
+        long count = dropped.getAndSet(0);
+        if (count > 0) {
+            XLog.dispatchDropped(count);
+        }
+        return drained;
+    }
+
+    private boolean isEmpty() {
+        return head == tail.get();
+    }
+
+    /**
+     * 等待已写入的日志全部输出
+     *
+     * @param timeoutMillis 最长等待时间
+     */
+    void flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (head < target && System.currentTimeMillis() < deadline && thread.isAlive()) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(1000 * 1000L);
+        }
+    }
+
+    /**
+     * 输出剩余的日志后结束写线程
+     */
+    void shutdown(long timeoutMillis) {
+        running = false;
+        LockSupport.unpark(thread);
+        synchronized (notFull) {
+            notFull.notifyAll();
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
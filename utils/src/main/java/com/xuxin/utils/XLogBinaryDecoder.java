@@ -0,0 +1,176 @@
+package com.xuxin.utils;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 把{@link XLogBinarySink}写的二进制日志还原为文本，格式与{@link XLogFileSink}相同
+ * 不依赖Android，可以在电脑上直接运行:
+ * <pre>
+ * java com.xuxin.utils.XLogBinaryDecoder app.xlb [app-1.xlb ...]
+ * </pre>
+ */
+public class XLogBinaryDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] PRIORITIES = {' ', ' ', 'V', 'D', 'I', 'W', 'E', 'A'};
+
+    private final InputStream in;
+    private final Map<Long, String> tags = new HashMap<>();
+    private final Map<Long, String[]> formats = new HashMap<>();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+    private long time;
+
+    public XLogBinaryDecoder(InputStream in) {
+        this.in = in;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: XLogBinaryDecoder file.xlb [file.xlb ...]");
+            System.exit(1);
+        }
+        Writer writer = new OutputStreamWriter(System.out, UTF_8);
+        for (String path : args) {
+            InputStream in = new BufferedInputStream(new FileInputStream(path), 64 * 1024);
+            try {
+                new XLogBinaryDecoder(in).decode(writer);
+            } finally {
+                in.close();
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * 解码全部日志，文件末尾不完整的记录(例如进程崩溃)被忽略
+     *
+     * @param writer 输出的文本
+     * @return 解码的日志条数
+     * @throws IOException 不是二进制日志文件或读取失败
+     */
+    public int decode(Writer writer) throws IOException {
+        for (byte b : XLogBinarySink.MAGIC) {
+            if (in.read() != b) {
+                throw new IOException("not a XLog binary file");
+            }
+        }
+        time = 0;
+        for (int i = 0; i < 8; i++) {
+            time = (time << 8) | readByte();
+        }
+        int events = 0;
+        StringBuilder line = new StringBuilder(256);
+        try {
+            int type;
+            while ((type = in.read()) != -1) {
+                switch (type) {
+                    case XLogBinarySink.RECORD_TAG:
+                        tags.put(readVarLong(), readString());
+                        break;
+                    case XLogBinarySink.RECORD_FORMAT:
+                        formats.put(readVarLong(), split(readString()));
+                        break;
+                    case XLogBinarySink.RECORD_EVENT:
+                        line.setLength(0);
+                        readEvent(line);
+                        writer.write(line.toString());
+                        events++;
+                        break;
+                    default:
+                        throw new IOException("unknown record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // 最后一条记录不完整
+        }
+        return events;
+    }
+
+    private void readEvent(StringBuilder line) throws IOException {
+        long delta = readVarLong();
+        time += (delta >>> 1) ^ -(delta & 1);
+        int priority = readByte();
+        String tag = tags.get(readVarLong());
+        long formatId = readVarLong();
+        line.append(dateFormat.format(new Date(time))).append(' ')
+                .append(priority < PRIORITIES.length ? PRIORITIES[priority] : '?')
+                .append('/').append(tag).append(": ");
+        if (formatId == 0) {
+            line.append(readString());
+        } else {
+            String[] segments = formats.get(formatId);
+            if (segments == null) {
+                throw new IOException("unknown format " + formatId);
+            }
+            long count = readVarLong();
+            line.append(segments[0]);
+            for (int i = 0; i < count; i++) {
+                line.append(readString());
+                if (i + 1 < segments.length) {
+                    line.append(segments[i + 1]);
+                }
+            }
+        }
+        line.append('\n');
+    }
+
+    private static String[] split(String format) {
+        List<String> segments = new ArrayList<>();
+        int from = 0;
+        int index;
+        while ((index = format.indexOf("{}", from)) >= 0) {
+            segments.add(format.substring(from, index));
+            from = index + 2;
+        }
+        segments.add(format.substring(from));
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    private String readString() throws IOException {
+        int length = (int) readVarLong();
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+}
@@ -0,0 +1,322 @@
+package com.xuxin.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 以紧凑的二进制格式写日志文件，TAG和参数化日志的格式只在第一次出现时写入字典，之后只写编号
+ * 用{@link XLogBinaryDecoder}还原为文本
+ * <p>
+ * 文件: ['X']['L']['B']['1'][起始时间(8)] 之后是若干条记录，整数都是varint
+ * 字典: [1][编号][TAG] 或 [2][编号][格式]，字符串为[长度][UTF-8]
+ * 日志: [3][与上一条的时间差(zigzag)][级别(1)][TAG编号][格式编号]，
+ * 格式编号为0时接[文本]，否则接[参数个数][参数...]
+ * 每个文件的字典独立，滚动后的文件可以单独解码
+ */
+public class XLogBinarySink implements XLogSink {
+
+    static final byte[] MAGIC = {'X', 'L', 'B', '1'};
+    static final int RECORD_TAG = 1;
+    static final int RECORD_FORMAT = 2;
+    static final int RECORD_EVENT = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final String name;
+    private final long maxFileSize;
+    private final int maxFileCount;
+    private final File logFile;
+
+    private final Map<String, Integer> tags = new HashMap<>();
+    private final Map<String, FormatEntry> formats = new HashMap<>();
+    private final List<String> args = new ArrayList<>();
+    private final byte[] buffer = new byte[64 * 1024];
+    private int count;
+    private FileOutputStream out;
+    private long fileSize;
+    private long lastTime;
+    private boolean closed;
+
+    /**
+     * 单个文件4MB，保留10个
+     *
+     * @param directory 日志目录
+     * @param name      日志文件名前缀
+     * @throws IOException 文件无法创建
+     */
+    public XLogBinarySink(File directory, String name) throws IOException {
+        this(directory, name, 4 * 1024 * 1024, 10);
+    }
+
+    /**
+     * @param directory    日志目录
+     * @param name         日志文件名前缀
+     * @param maxFileSize  单个文件的大小上限
+     * @param maxFileCount 滚动后保留的文件个数
+     * @throws IOException 文件无法创建
+     */
+    public XLogBinarySink(File directory, String name, long maxFileSize, int maxFileCount) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.maxFileSize = maxFileSize;
+        this.maxFileCount = maxFileCount;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        logFile = new File(directory, name + ".xlb");
+        if (logFile.exists() && logFile.length() > 0) {
+            // 字典不在内存中，不能接着旧文件写
+            roll();
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        out = new FileOutputStream(logFile);
+        fileSize = 0;
+        tags.clear();
+        formats.clear();
+        lastTime = System.currentTimeMillis();
+        writeBytes(MAGIC, 0, MAGIC.length);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (lastTime >>> shift));
+        }
+    }
+
+    @Override
+    public synchronized void write(XLogEvent event) {
+        if (closed) {
+            return;
+        }
+        try {
+            int tagId = tagId(event.getTag());
+            int formatId = 0;
+            String text = event.getText();
+            if (event.getFormat() != null && event.getThrowable() == null) {
+                FormatEntry entry = formatEntry(event.getFormat());
+                if (entry.split(text, args)) {
+                    formatId = entry.id;
+                }
+            }
+            writeByte(RECORD_EVENT);
+            long delta = event.getTime() - lastTime;
+            lastTime = event.getTime();
+            writeVarLong((delta << 1) ^ (delta >> 63));
+            writeByte(event.getPriority());
+            writeVarLong(tagId);
+            writeVarLong(formatId);
+            if (formatId == 0) {
+                writeString(text);
+            } else {
+                writeVarLong(args.size());
+                for (int i = 0; i < args.size(); i++) {
+                    writeString(args.get(i));
+                }
+            }
+            if (fileSize + count >= maxFileSize) {
+                flushBuffer();
+                out.close();
+                roll();
+                open();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private int tagId(String tag) throws IOException {
+        Integer id = tags.get(tag);
+        if (id == null) {
+            id = tags.size() + 1;
+            tags.put(tag, id);
+            writeByte(RECORD_TAG);
+            writeVarLong(id);
+            writeString(tag);
+        }
+        return id;
+    }
+
+    private FormatEntry formatEntry(String format) throws IOException {
+        FormatEntry entry = formats.get(format);
+        if (entry == null) {
+            entry = new FormatEntry(formats.size() + 1, format);
+            formats.put(format, entry);
+            writeByte(RECORD_FORMAT);
+            writeVarLong(entry.id);
+            writeString(format);
+        }
+        return entry;
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 写入缓冲的日志并关闭
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void roll() {
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US).format(new Date());
+        File rolledFile = new File(directory, name + "-" + time + ".xlb");
+        // 同一毫秒内多次滚动时追加序号，避免renameTo覆盖之前的文件；'_'排在'.'之后，文件名依然按时间先后排序
+        for (int sequence = 1; rolledFile.exists(); sequence++) {
+            rolledFile = new File(directory, String.format(Locale.US, "%s-%s_%03d.xlb", name, time, sequence));
+        }
+        if (!logFile.renameTo(rolledFile)) {
+            return;
+        }
+        final String prefix = name + "-";
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        int rolled = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].getName().startsWith(prefix) && files[i].getName().endsWith(".xlb")) {
+                files[rolled++] = files[i];
+            }
+        }
+        if (rolled <= maxFileCount) {
+            return;
+        }
+        files = Arrays.copyOf(files, rolled);
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return lhs.getName().compareTo(rhs.getName());
+            }
+        });
+        for (int i = 0; i < rolled - maxFileCount; i++) {
+            files[i].delete();
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - count) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(bytes, offset, length);
+                fileSize += length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            fileSize += count;
+            count = 0;
+        }
+    }
+
+    /**
+     * 参数化日志的格式，按{}切分成若干段文字
+     */
+    private static final class FormatEntry {
+
+        final int id;
+        final String[] segments;
+
+        FormatEntry(int id, String format) {
+            this.id = id;
+            List<String> list = new ArrayList<>();
+            int from = 0;
+            int index;
+            while ((index = format.indexOf("{}", from)) >= 0) {
+                list.add(format.substring(from, index));
+                from = index + 2;
+            }
+            list.add(format.substring(from));
+            segments = list.toArray(new String[list.size()]);
+        }
+
+        /**
+         * 从格式化后的文本中取出参数，seg0 + arg0 + seg1 + arg1 + ... 与原文完全相同即可还原
+         *
+         * @return 文本与格式不符时返回false
+         */
+        boolean split(String text, List<String> args) {
+            args.clear();
+            if (text == null || !text.startsWith(segments[0])) {
+                return false;
+            }
+            int position = segments[0].length();
+            int last = segments.length - 1;
+            for (int i = 1; i <= last; i++) {
+                String segment = segments[i];
+                int index;
+                if (i == last) {
+                    index = text.length() - segment.length();
+                    if (index < position || !text.endsWith(segment)) {
+                        return false;
+                    }
+                } else {
+                    index = text.indexOf(segment, position);
+                    if (index < 0) {
+                        return false;
+                    }
+                }
+                args.add(text.substring(position, index));
+                position = index + segment.length();
+            }
+            return position == text.length();
+        }
+    }
+}
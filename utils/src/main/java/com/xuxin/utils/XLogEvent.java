@@ -0,0 +1,79 @@
+package com.xuxin.utils;
+
+/**
+ * 一条日志
+ * 异步模式下事件对象预先分配在环形缓冲区中循环使用，只在回调期间有效，不要持有
+ */
+public final class XLogEvent {
+
+    long time;
+    int priority;
+    String tag;
+    String format;
+    String message;
+    Throwable throwable;
+    /**
+     * 实际输出的文本，由XLog在分发给sink前生成
+     */
+    String text;
+
+    XLogEvent() {
+    }
+
+    void set(long time, int priority, String tag, String format, String message, Throwable throwable) {
+        this.time = time;
+        this.priority = priority;
+        this.tag = tag;
+        this.format = format;
+        this.message = message;
+        this.throwable = throwable;
+    }
+
+    void clear() {
+        tag = null;
+        format = null;
+        message = null;
+        throwable = null;
+        text = null;
+    }
+
+    /**
+     * @return 产生日志的时间(System.currentTimeMillis)
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return 日志级别，与android.util.Log.VERBOSE ~ Log.ERROR一致
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return 参数化日志的格式(例如"x={} y={}")，普通日志为null
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    /**
+     * @return 实际输出的文本，包含异常堆栈
+     */
+    public String getText() {
+        return text;
+    }
+}
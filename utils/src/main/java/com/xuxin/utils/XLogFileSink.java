@@ -0,0 +1,283 @@
+package com.xuxin.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 把XLog日志写入文件
+ * 日志先编码进一块内存映射的缓冲文件(name.mmap)，进程崩溃时内容由系统写回磁盘，下次打开时补写到日志文件
+ * 缓冲区满时一次性追加到当前日志文件(name.log)，日志文件超过大小后滚动为name-时间.log(可选gzip压缩)，
+ * 只保留最近的若干个
+ * <pre>
+ * XLog.startAsync(4096);
+ * XLog.addSink(new XLogFileSink(new File(context.getFilesDir(), "log"), "app"));
+ * </pre>
+ */
+public class XLogFileSink implements XLogSink {
+
+    private static final int MAGIC = 0x584C4F47;
+    private static final int HEADER_SIZE = 8;
+    private static final char[] PRIORITIES = {' ', ' ', 'V', 'D', 'I', 'W', 'E', 'A'};
+
+    private final File directory;
+    private final String name;
+    private final long maxFileSize;
+    private final int maxFileCount;
+    private final boolean gzip;
+
+    private final File logFile;
+    private final RandomAccessFile bufferFile;
+    private final MappedByteBuffer buffer;
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder(256);
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss", Locale.US);
+    private long lastSecond = -1;
+    private String secondPrefix;
+    private boolean closed;
+
+    /**
+     * 使用256KB缓冲，单个日志文件4MB，保留10个，压缩滚动后的文件
+     *
+     * @param directory 日志目录
+     * @param name      日志文件名前缀
+     * @throws IOException 文件无法创建
+     */
+    public XLogFileSink(File directory, String name) throws IOException {
+        this(directory, name, 256 * 1024, 4 * 1024 * 1024, 10, true);
+    }
+
+    /**
+     * @param directory    日志目录
+     * @param name         日志文件名前缀
+     * @param bufferSize   内存映射缓冲区大小
+     * @param maxFileSize  单个日志文件的大小上限
+     * @param maxFileCount 滚动后保留的日志文件个数
+     * @param gzip         滚动后的文件是否用gzip压缩
+     * @throws IOException 文件无法创建
+     */
+    public XLogFileSink(File directory, String name, int bufferSize, long maxFileSize, int maxFileCount,
+                        boolean gzip) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.maxFileSize = maxFileSize;
+        this.maxFileCount = maxFileCount;
+        this.gzip = gzip;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        logFile = new File(directory, name + ".log");
+        bufferFile = new RandomAccessFile(new File(directory, name + ".mmap"), "rw");
+        int capacity = Math.max(bufferSize, 4096);
+        bufferFile.setLength(capacity);
+        buffer = bufferFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (buffer.getInt(0) == MAGIC) {
+            // 上次没来得及写入日志文件的内容(例如进程崩溃)
+            int used = buffer.getInt(4);
+            buffer.position(Math.max(HEADER_SIZE, Math.min(used, capacity)));
+            flushBuffer();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, HEADER_SIZE);
+            buffer.position(HEADER_SIZE);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void write(XLogEvent event) {
+        if (closed) {
+            return;
+        }
+        line.setLength(0);
+        appendTime(event.getTime());
+        int priority = event.getPriority();
+        line.append(' ').append(priority >= 0 && priority < PRIORITIES.length ? PRIORITIES[priority] : '?')
+                .append('/').append(event.getTag()).append(": ").append(event.getText()).append('\n');
+        try {
+            CharBuffer chars = CharBuffer.wrap(line);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    flushBuffer();
+                } else {
+                    break;
+                }
+            }
+            encoder.reset();
+            // 先写内容再更新长度，崩溃时最多丢失正在写的这一行
+            buffer.putInt(4, buffer.position());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void appendTime(long time) {
+        long second = time / 1000;
+        if (second != lastSecond) {
+            lastSecond = second;
+            secondPrefix = dateFormat.format(new Date(time));
+        }
+        int millis = (int) (time % 1000);
+        line.append(secondPrefix).append('.');
+        if (millis < 100) {
+            line.append('0');
+        }
+        if (millis < 10) {
+            line.append('0');
+        }
+        line.append(millis);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 写入缓冲的日志并关闭
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        try {
+            bufferFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 把缓冲区的内容追加到日志文件，必要时滚动
+     */
+    private void flushBuffer() throws IOException {
+        int used = buffer.position();
+        if (used > HEADER_SIZE) {
+            FileOutputStream out = new FileOutputStream(logFile, true);
+            try {
+                ByteBuffer content = buffer.duplicate();
+                content.position(HEADER_SIZE);
+                content.limit(used);
+                out.getChannel().write(content);
+            } finally {
+                out.close();
+            }
+        }
+        buffer.position(HEADER_SIZE);
+        buffer.putInt(4, HEADER_SIZE);
+        if (logFile.length() >= maxFileSize) {
+            roll();
+        }
+    }
+
+    private void roll() throws IOException {
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US).format(new Date());
+        String rolledName = name + "-" + time;
+        // 同一毫秒内多次滚动时追加序号，避免renameTo覆盖之前的文件；'_'排在'.'之后，文件名依然按时间先后排序
+        for (int sequence = 1; new File(directory, rolledName + ".log").exists()
+                || new File(directory, rolledName + ".log.gz").exists(); sequence++) {
+            rolledName = String.format(Locale.US, "%s-%s_%03d", name, time, sequence);
+        }
+        File rolled = new File(directory, rolledName + ".log");
+        if (!logFile.renameTo(rolled)) {
+            return;
+        }
+        if (gzip) {
+            File compressed = new File(directory, rolledName + ".log.gz");
+            if (compress(rolled, compressed)) {
+                rolled.delete();
+            }
+        }
+        deleteOldFiles();
+    }
+
+    private static boolean compress(File source, File target) {
+        FileInputStream in = null;
+        GZIPOutputStream out = null;
+        try {
+            in = new FileInputStream(source);
+            out = new GZIPOutputStream(new FileOutputStream(target), 64 * 1024);
+            byte[] bytes = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(bytes)) != -1) {
+                out.write(bytes, 0, read);
+            }
+            out.finish();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            target.delete();
+            return false;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void deleteOldFiles() {
+        final String prefix = name + "-";
+        File[] rolled = directory.listFiles();
+        if (rolled == null) {
+            return;
+        }
+        int count = 0;
+        for (int i = 0; i < rolled.length; i++) {
+            if (rolled[i].getName().startsWith(prefix)) {
+                rolled[count++] = rolled[i];
+            }
+        }
+        if (count <= maxFileCount) {
+            return;
+        }
+        File[] files = Arrays.copyOf(rolled, count);
+        // 文件名中的时间可以按字典序排序
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return lhs.getName().compareTo(rhs.getName());
+            }
+        });
+        for (int i = 0; i < count - maxFileCount; i++) {
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.xuxin.utils;
+
+/**
+ * XLog的输出目标，通过{@link XLog#addSink(XLogSink)}添加
+ * 异步模式下只在XLog的写线程中调用，同步模式下在打印日志的线程中调用，实现需要线程安全
+ */
+public interface XLogSink {
+
+    /**
+     * 输出一条日志，event只在本方法内有效，不要持有
+     *
+     * @param event 日志
+     */
+    void write(XLogEvent event);
+
+    /**
+     * 把缓冲的日志写入存储
+     */
+    void flush();
+}
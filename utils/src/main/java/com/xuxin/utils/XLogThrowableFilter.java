@@ -0,0 +1,88 @@
+package com.xuxin.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * XLog打印异常时的去重
+ * 按异常类型和调用栈(包括cause)计算指纹，同一指纹在时间窗口内只打印一次完整堆栈，
+ * 之后只打印指纹和次数，指纹表按LRU淘汰，占用的内存有上限
+ */
+class XLogThrowableFilter {
+
+    /**
+     * 每个异常最多参与计算的栈帧数和cause层数，避免超深的栈拖慢计算
+     */
+    private static final int MAX_FRAMES = 64;
+    private static final int MAX_CAUSES = 4;
+
+    private final long windowMillis;
+    private final Map<Long, Occurrence> entries;
+
+    /**
+     * @param windowMillis    时间窗口
+     * @param maxFingerprints 最多记录的指纹个数
+     */
+    XLogThrowableFilter(long windowMillis, final int maxFingerprints) {
+        this.windowMillis = windowMillis;
+        entries = new LinkedHashMap<Long, Occurrence>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Occurrence> eldest) {
+                return size() > maxFingerprints;
+            }
+        };
+    }
+
+    /**
+     * @return null表示应该打印完整堆栈，否则返回代替堆栈的简短说明
+     */
+    String filter(Throwable tr) {
+        long fingerprint = fingerprint(tr);
+        long now = System.currentTimeMillis();
+        int count;
+        synchronized (entries) {
+            Occurrence occurrence = entries.get(fingerprint);
+            if (occurrence == null || now - occurrence.windowStart > windowMillis) {
+                if (occurrence == null) {
+                    occurrence = new Occurrence();
+                    entries.put(fingerprint, occurrence);
+                }
+                occurrence.windowStart = now;
+                occurrence.count = 0;
+                return null;
+            }
+            count = ++occurrence.count;
+        }
+        return tr.getClass().getName() + ": " + tr.getMessage()
+                + " [fingerprint " + Long.toHexString(fingerprint) + ", repeated " + count + " times]";
+    }
+
+    /**
+     * 只使用异常类型、类名、方法名和行号，不使用message，message中常带有变化的数据
+     */
+    static long fingerprint(Throwable tr) {
+        long hash = 1125899906842597L;
+        int depth = 0;
+        for (Throwable current = tr; current != null && depth < MAX_CAUSES; current = current.getCause()) {
+            hash = 31 * hash + current.getClass().getName().hashCode();
+            StackTraceElement[] stackTrace = current.getStackTrace();
+            int frames = Math.min(stackTrace.length, MAX_FRAMES);
+            for (int i = 0; i < frames; i++) {
+                StackTraceElement element = stackTrace[i];
+                hash = 31 * hash + element.getClassName().hashCode();
+                hash = 31 * hash + element.getMethodName().hashCode();
+                hash = 31 * hash + element.getLineNumber();
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+            depth++;
+        }
+        return hash;
+    }
+
+    private static final class Occurrence {
+        long windowStart;
+        int count;
+    }
+}
@@ -0,0 +1,523 @@
+package com.xuxin.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 可随机访问的ZIP读取器
+ * 打开时把中央目录映射到内存解析一次，建立条目名到条目的索引，之后查找条目不再读文件；
+ * 条目数据使用FileChannel的按位置读取，多个线程可以同时读取不同(或相同)的条目，互不加锁
+ * 只支持ZIP32，不支持加密条目
+ * <p>
+ * 注意：读取中的线程被中断时FileChannel会被关闭，之后的读取都会失败，{@link #get(File)}会重新打开
+ * <pre>
+ * ZipReader reader = ZipReader.get(file);
+ * byte[] bytes = reader.getBytes("assets/a.json");
+ * </pre>
+ */
+public class ZipReader implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<String, ZipReader> shared = new HashMap<>();
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long length;
+    private final long lastModified;
+    private final List<Entry> entries;
+    private final Map<String, Entry> index;
+    private volatile boolean closed;
+    /**
+     * 未关闭的输入流个数，只在本对象的锁内修改
+     */
+    private int openStreams;
+    /**
+     * 已被{@link #get(File)}替换，最后一个输入流关闭时关闭文件
+     */
+    private boolean retired;
+
+    /**
+     * 打开ZIP并解析中央目录
+     *
+     * @param file ZIP文件
+     * @throws IOException 文件不存在或不是支持的ZIP格式
+     */
+    public ZipReader(File file) throws IOException {
+        this.file = file;
+        lastModified = file.lastModified();
+        raf = new RandomAccessFile(file, "r");
+        boolean success = false;
+        try {
+            channel = raf.getChannel();
+            length = channel.size();
+            entries = Collections.unmodifiableList(readCentralDirectory());
+            index = new HashMap<>(entries.size() * 4 / 3 + 1);
+            for (Entry entry : entries) {
+                index.put(entry.name, entry);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * 获取共享的读取器，同一个文件只打开一次；文件的大小或修改时间变化、或读取器已关闭(包括读取线程被中断)时重新打开
+     * 被替换的旧读取器在它打开的输入流全部关闭后才关闭，其他线程正在读取的流不受影响；
+     * 没有打开的流时立即关闭，所以不要长时间持有返回的读取器，每次使用时重新获取
+     *
+     * @param file ZIP文件
+     * @return 读取器，不要自行关闭，使用{@link #closeAll()}释放
+     */
+    public static ZipReader get(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        synchronized (shared) {
+            ZipReader reader = shared.get(key);
+            if (reader != null && !reader.closed && reader.channel.isOpen()
+                    && reader.length == file.length() && reader.lastModified == file.lastModified()) {
+                return reader;
+            }
+            if (reader != null) {
+                shared.remove(key);
+                reader.retire();
+            }
+            reader = new ZipReader(file);
+            shared.put(key, reader);
+            return reader;
+        }
+    }
+
+    /**
+     * 释放所有{@link #get(File)}打开的读取器，还有输入流未关闭的读取器在流关闭后关闭
+     */
+    public static void closeAll() {
+        synchronized (shared) {
+            Iterator<ZipReader> iterator = shared.values().iterator();
+            while (iterator.hasNext()) {
+                iterator.next().retire();
+                iterator.remove();
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return 所有条目，按中央目录中的顺序
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param name 条目名，目录以'/'结尾
+     * @return 条目，不存在时返回null
+     */
+    public Entry getEntry(String name) {
+        return index.get(name);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 读取条目解压后的数据
+     *
+     * @param name 条目名
+     * @return 输入流，使用后需要关闭
+     * @throws FileNotFoundException 条目不存在
+     */
+    public InputStream getInputStream(String name) throws IOException {
+        Entry entry = index.get(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name + " not found in " + file);
+        }
+        return getInputStream(entry);
+    }
+
+    /**
+     * 读取条目解压后的数据
+     *
+     * @param entry 本读取器中的条目
+     * @return 输入流，使用后需要关闭
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        if (entry.method == ZipWriter.METHOD_STORED) {
+            return new RawInputStream(dataOffset(entry), entry.compressedSize, false);
+        }
+        final Inflater inflater = new Inflater(true);
+        int size = (int) Math.max(64, Math.min(BUFFER_SIZE, entry.compressedSize + 1));
+        // nowrap模式的Inflater需要在数据后多读一个字节
+        return new InflaterInputStream(new RawInputStream(dataOffset(entry), entry.compressedSize, true), inflater, size) {
+            private boolean ended;
+
+            @Override
+            public void close() throws IOException {
+                if (!ended) {
+                    ended = true;
+                    inflater.end();
+                }
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * 读取条目解压后的全部数据
+     *
+     * @param name 条目名
+     * @return 数据
+     * @throws FileNotFoundException 条目不存在
+     */
+    public byte[] getBytes(String name) throws IOException {
+        Entry entry = index.get(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name + " not found in " + file);
+        }
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new IOException(name + " is too large");
+        }
+        InputStream in = getInputStream(entry);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) entry.size);
+            byte[] buffer = new byte[(int) Math.max(1, Math.min(BUFFER_SIZE, entry.size))];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 读取条目压缩后的原始数据，用于不解压直接复制到另一个ZIP
+     */
+    InputStream getRawInputStream(Entry entry) throws IOException {
+        return new RawInputStream(dataOffset(entry), entry.compressedSize, false);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 不再共享，没有打开的输入流时立即关闭，否则等最后一个流关闭
+     */
+    private synchronized void retire() {
+        retired = true;
+        if (openStreams == 0) {
+            close();
+        }
+    }
+
+    private synchronized void streamOpened() {
+        openStreams++;
+    }
+
+    private synchronized void streamClosed() {
+        if (--openStreams == 0 && retired) {
+            close();
+        }
+    }
+
+    /**
+     * 关闭文件，正在进行和之后的读取会抛出IOException
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            raf.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        // 结束记录在文件末尾，后面最多有65535字节的注释
+        int tailSize = (int) Math.min(length, END_SIZE + 0xFFFF);
+        if (tailSize < END_SIZE) {
+            throw new IOException(file + " is not a zip file");
+        }
+        ByteBuffer tail = map(length - tailSize, tailSize);
+        int end = -1;
+        for (int p = tailSize - END_SIZE; p >= 0; p--) {
+            if (tail.getInt(p) == END_SIGNATURE && p + END_SIZE + (tail.getShort(p + 20) & 0xFFFF) == tailSize) {
+                end = p;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException(file + " is not a zip file");
+        }
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & MAX_32;
+        long directoryOffset = tail.getInt(end + 16) & MAX_32;
+        if (count == 0xFFFF || directoryOffset == MAX_32 || directorySize == MAX_32) {
+            throw new IOException("zip64 is not supported: " + file);
+        }
+        if (directoryOffset + directorySize > length - tailSize + end) {
+            throw new IOException("invalid central directory in " + file);
+        }
+
+        ByteBuffer directory = map(directoryOffset, directorySize);
+        List<Entry> list = new ArrayList<>(count);
+        Calendar calendar = Calendar.getInstance();
+        int p = 0;
+        for (int i = 0; i < count; i++) {
+            if (p + CENTRAL_HEADER_SIZE > directorySize || directory.getInt(p) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("invalid central directory in " + file);
+            }
+            int nameLength = directory.getShort(p + 28) & 0xFFFF;
+            int extraLength = directory.getShort(p + 30) & 0xFFFF;
+            int commentLength = directory.getShort(p + 32) & 0xFFFF;
+            if (p + CENTRAL_HEADER_SIZE + nameLength > directorySize) {
+                throw new IOException("invalid central directory in " + file);
+            }
+            byte[] name = new byte[nameLength];
+            directory.position(p + CENTRAL_HEADER_SIZE);
+            directory.get(name);
+            Entry entry = new Entry(new String(name, UTF_8));
+            entry.flags = directory.getShort(p + 8) & 0xFFFF;
+            entry.method = directory.getShort(p + 10) & 0xFFFF;
+            entry.time = javaTime(directory.getInt(p + 12), calendar);
+            entry.crc = directory.getInt(p + 16) & MAX_32;
+            entry.compressedSize = directory.getInt(p + 20) & MAX_32;
+            entry.size = directory.getInt(p + 24) & MAX_32;
+            entry.localHeaderOffset = directory.getInt(p + 42) & MAX_32;
+            if (entry.compressedSize == MAX_32 || entry.size == MAX_32 || entry.localHeaderOffset == MAX_32) {
+                throw new IOException("zip64 is not supported: " + file);
+            }
+            list.add(entry);
+            p += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return list;
+    }
+
+    private ByteBuffer map(long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * 数据的位置需要读取本地文件头才能确定，第一次读取时计算
+     */
+    private long dataOffset(Entry entry) throws IOException {
+        if ((entry.flags & FLAG_ENCRYPTED) != 0) {
+            throw new IOException(entry.name + " is encrypted");
+        }
+        if (entry.method != ZipWriter.METHOD_STORED && entry.method != ZipWriter.METHOD_DEFLATED) {
+            throw new IOException(entry.name + " uses unsupported method " + entry.method);
+        }
+        long offset = entry.dataOffset;
+        if (offset < 0) {
+            ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, entry.localHeaderOffset);
+            if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("invalid local header for " + entry.name);
+            }
+            offset = entry.localHeaderOffset + LOCAL_HEADER_SIZE
+                    + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            if (offset + entry.compressedSize > length) {
+                throw new IOException("truncated entry " + entry.name);
+            }
+            entry.dataOffset = offset;
+        }
+        return offset;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        if (closed) {
+            throw new IOException(file + " is closed");
+        }
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException(file.getPath());
+            }
+            position += read;
+        }
+    }
+
+    private static long javaTime(int dosTime, Calendar calendar) {
+        calendar.clear();
+        calendar.set(((dosTime >> 25) & 0x7F) + 1980, ((dosTime >> 21) & 0x0F) - 1, (dosTime >> 16) & 0x1F,
+                (dosTime >> 11) & 0x1F, (dosTime >> 5) & 0x3F, (dosTime << 1) & 0x3E);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * 按位置读取一段数据，不改变FileChannel的位置，因此可以并发使用
+     */
+    private final class RawInputStream extends InputStream {
+
+        private long position;
+        private long remaining;
+        /**
+         * 数据读完后是否再返回一个0，供nowrap模式的Inflater使用
+         */
+        private boolean dummy;
+        private boolean released;
+
+        RawInputStream(long position, long size, boolean dummy) {
+            this.position = position;
+            this.remaining = size;
+            this.dummy = dummy;
+            streamOpened();
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                streamClosed();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                if (dummy) {
+                    dummy = false;
+                    bytes[off] = 0;
+                    return 1;
+                }
+                return -1;
+            }
+            if (closed) {
+                throw new IOException(file + " is closed");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, off, (int) Math.min(len, remaining));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException(file.getPath());
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+    }
+
+    /**
+     * ZIP中的一个条目
+     */
+    public static final class Entry {
+
+        final String name;
+        int flags;
+        int method;
+        long time;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+        volatile long dataOffset = -1;
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /**
+         * @return {@link java.util.zip.ZipEntry#STORED}或{@link java.util.zip.ZipEntry#DEFLATED}
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * @return 修改时间，精度为2秒
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.xuxin.utils;
+
+/**
+ * ZIP压缩或解压的统计，由{@link ZipUtils}中的方法返回
+ */
+public class ZipStats {
+
+    int entries;
+    int reusedEntries;
+    long compressedBytes;
+    long uncompressedBytes;
+    long elapsedMillis;
+
+    ZipStats() {
+    }
+
+    /**
+     * @return 处理的文件条目数，不含目录
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return 增量更新时直接从旧ZIP复制的条目数
+     */
+    public int getReusedEntries() {
+        return reusedEntries;
+    }
+
+    /**
+     * @return 压缩后的字节数(ZIP中的数据)
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return 原始文件的字节数
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return 按原始文件大小计算的速度，单位byte/s
+     */
+    public long getBytesPerSecond() {
+        return uncompressedBytes * 1000 / Math.max(1, elapsedMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "ZipStats{entries=" + entries + ", reused=" + reusedEntries + ", compressed=" + compressedBytes
+                + ", uncompressed=" + uncompressedBytes + ", elapsed=" + elapsedMillis
+                + "ms, speed=" + getBytesPerSecond() / 1024 + "KB/s}";
+    }
+}
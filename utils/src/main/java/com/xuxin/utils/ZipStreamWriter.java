@@ -0,0 +1,299 @@
+package com.xuxin.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 边压缩边输出的ZIP流，可以直接写入网络、管道等任意OutputStream或WritableByteChannel，不需要先生成临时文件
+ * 大小未知的条目使用deflate压缩并在数据后写入数据描述符；{@link #putFile}存储的文件事先计算CRC32，
+ * 本地文件头中直接写入大小
+ * 内存占用固定(一个Deflater和三个64KB缓冲区)，另外每个条目在中央目录中占用几十字节；
+ * 写入是同步的，输出跟不上时调用线程阻塞在write上，不会积压数据
+ * <pre>
+ * ZipStreamWriter zip = new ZipStreamWriter(outputStream);
+ * zip.putFile(file, "a/b.txt");
+ * zip.putNextEntry("c.json", System.currentTimeMillis());
+ * zip.write(bytes);
+ * zip.close();
+ * </pre>
+ */
+public class ZipStreamWriter extends OutputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream target;
+    private final ZipWriter writer;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    /**
+     * deflate的输出
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    /**
+     * 读取文件的输入，不能与buffer共用
+     */
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private Map<String, Integer> levelByExtension = ZipUtils.defaultLevels();
+    private boolean entryOpen;
+    private long entrySize;
+    private int entries;
+    private long compressedBytes;
+    private volatile long bytesIn;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * @param out 输出，{@link #close()}时关闭
+     */
+    public ZipStreamWriter(OutputStream out) {
+        target = out;
+        writer = new ZipWriter(out);
+    }
+
+    /**
+     * @param channel 输出，{@link #close()}时关闭
+     */
+    public ZipStreamWriter(WritableByteChannel channel) {
+        this(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * @param level 压缩级别(0-9)，从下一个条目开始生效
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * @param levelByExtension 按扩展名(小写，不含点)指定的压缩级别，用于{@link #putFile}，可以为null
+     */
+    public void setLevelByExtension(Map<String, Integer> levelByExtension) {
+        this.levelByExtension = levelByExtension;
+    }
+
+    /**
+     * 开始一个大小未知的条目，之前的条目自动结束，之后用write写入原始数据
+     *
+     * @param name 条目名
+     * @param time 修改时间(System.currentTimeMillis)
+     */
+    public void putNextEntry(String name, long time) throws IOException {
+        startEntry(name, time, level);
+    }
+
+    private void startEntry(String name, long time, int entryLevel) throws IOException {
+        closeEntry();
+        ensureOpen();
+        deflater.reset();
+        deflater.setLevel(entryLevel);
+        crc.reset();
+        entrySize = 0;
+        writer.putEntry(name, time);
+        entryOpen = true;
+    }
+
+    /**
+     * 写入一个目录条目，之前的条目自动结束
+     */
+    public void putDirectory(String name, long time) throws IOException {
+        closeEntry();
+        ensureOpen();
+        writer.putDirectory(name, time);
+    }
+
+    /**
+     * 写入一个文件，之前的条目自动结束；按扩展名指定为0级的文件先读一遍计算CRC32后直接存储
+     * 直接存储的文件会读两遍，写入数据时重新计算CRC32，与文件头中的不同(文件在两次读取之间被修改)时抛出异常
+     *
+     * @param file 文件
+     * @param name 条目名
+     * @throws IOException 读写出错，或直接存储的文件在写入过程中被修改，此时输出的ZIP不完整，不能再使用
+     */
+    public void putFile(File file, String name) throws IOException {
+        int fileLevel = ZipUtils.levelFor(name, level, levelByExtension);
+        if (fileLevel != Deflater.NO_COMPRESSION) {
+            startEntry(name, file.lastModified(), fileLevel);
+            InputStream in = new FileInputStream(file);
+            try {
+                int read;
+                while ((read = in.read(input)) != -1) {
+                    write(input, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+            closeEntry();
+            return;
+        }
+
+        closeEntry();
+        ensureOpen();
+        CRC32 checksum = new CRC32();
+        long size = 0;
+        InputStream in = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = in.read(input)) != -1) {
+                checksum.update(input, 0, read);
+                size += read;
+            }
+        } finally {
+            in.close();
+        }
+        long expected = checksum.getValue();
+        writer.putEntry(name, file.lastModified(), ZipWriter.METHOD_STORED, expected, size, size);
+        checksum.reset();
+        long copied = 0;
+        in = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = in.read(input)) != -1) {
+                if (copied + read > size) {
+                    break;
+                }
+                checksum.update(input, 0, read);
+                writer.write(input, 0, read);
+                copied += read;
+            }
+        } finally {
+            in.close();
+        }
+        if (copied != size || checksum.getValue() != expected) {
+            throw new IOException(file + " changed while being written to the zip");
+        }
+        entries++;
+        compressedBytes += size;
+        bytesIn += size;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /**
+     * 写入当前条目的原始数据
+     */
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        if (!entryOpen) {
+            throw new IOException("no current entry");
+        }
+        if (len == 0) {
+            return;
+        }
+        crc.update(bytes, off, len);
+        entrySize += len;
+        bytesIn += len;
+        deflater.setInput(bytes, off, len);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    /**
+     * 结束当前条目，没有时不做处理
+     */
+    public void closeEntry() throws IOException {
+        if (!entryOpen) {
+            return;
+        }
+        entryOpen = false;
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+        writer.closeEntry(crc.getValue(), entrySize);
+        entries++;
+        compressedBytes += deflater.getBytesWritten();
+    }
+
+    private void deflate() throws IOException {
+        int length = deflater.deflate(buffer, 0, buffer.length);
+        if (length > 0) {
+            writer.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * @return 已写入的原始数据字节数，可以在其他线程中读取
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return 已输出的字节数(包括文件头和中央目录，可能有部分还在缓冲区中)
+     */
+    public long getBytesOut() {
+        return writer.getBytesWritten();
+    }
+
+    /**
+     * @return 已完成的文件条目数，不含目录
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return 已完成的条目压缩后的数据字节数，不含文件头
+     */
+    long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * 把缓冲的数据写到输出
+     */
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+        target.flush();
+    }
+
+    /**
+     * 结束当前条目并写入中央目录，不关闭输出
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        finished = true;
+        writer.finish();
+        deflater.end();
+    }
+
+    /**
+     * 完成ZIP并关闭输出
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            finish();
+        } finally {
+            deflater.end();
+            target.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("zip is finished");
+        }
+    }
+}
@@ -1,15 +1,40 @@
 package com.xuxin.utils;
 
+import com.xuxin.utils.listener.OnProgressListener;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 /**
  * 压缩工具类
@@ -17,6 +42,22 @@ import java.util.zip.ZipOutputStream;
 
 public class ZipUtils {
 
+    /**
+     * 解压和压缩时每个线程使用的缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    /**
+     * 压缩时每个线程最多领先写入位置的条目数，限制已压缩未写入的数据占用的内存和临时文件
+     */
+    private static final int LOOK_AHEAD_PER_THREAD = 4;
+    /**
+     * 已经压缩过的格式，再次deflate几乎没有收益
+     */
+    private static final String[] STORED_EXTENSIONS = {
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "mp3", "aac", "m4a", "ogg", "amr", "flac",
+            "mp4", "3gp", "mkv", "webm", "avi", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "apk", "jar"};
+
     /**
      * DeCompress the ZIP to the path
      *
@@ -25,34 +66,164 @@ public class ZipUtils {
      * @throws Exception
      */
     public static void UnZipFolder(String zipFileString, String outPathString) throws Exception {
-        ZipInputStream inZip = new ZipInputStream(new FileInputStream(zipFileString));
-        ZipEntry zipEntry;
-        String szName = "";
-        while ((zipEntry = inZip.getNextEntry()) != null) {
-            szName = zipEntry.getName();
-            if (zipEntry.isDirectory()) {
-                // get the folder name of the widget
-                szName = szName.substring(0, szName.length() - 1);
-                File folder = new File(outPathString + File.separator + szName);
-                folder.mkdirs();
-            } else {
+        unzip(new File(zipFileString), new File(outPathString), DEFAULT_THREADS, null);
+    }
 
-                File file = new File(outPathString + File.separator + szName);
-                file.createNewFile();
-                // get the output stream of the file
-                FileOutputStream out = new FileOutputStream(file);
-                int len;
-                byte[] buffer = new byte[1024];
-                // read (len) bytes into buffer
-                while ((len = inZip.read(buffer)) != -1) {
-                    // write (len) byte from buffer at the position 0
-                    out.write(buffer, 0, len);
-                    out.flush();
+    /**
+     * 多线程解压
+     * 每个线程打开各自的ZipFile，按条目从大到小领取任务，互不加锁；目录在解压前一次性创建
+     * 条目路径解析后不在目标目录内(例如"../../x")时拒绝解压
+     *
+     * @param zipFile  ZIP文件
+     * @param outDir   解压到的目录
+     * @param threads  线程数(包括调用线程)，小于1时按1处理
+     * @param listener 进度回调(已解压的字节数，总字节数)，可以为null，在解压线程中回调
+     * @return 条目数、字节数和速度
+     * @throws IOException 读写出错或条目路径不合法，已解压的文件保留
+     */
+    public static ZipStats unzip(File zipFile, File outDir, int threads, OnProgressListener listener)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        final String path = zipFile.getPath();
+        final List<ZipEntry> entries = new ArrayList<>();
+        final List<File> targets = new ArrayList<>();
+        long total = 0;
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            String root = outDir.getCanonicalPath() + File.separator;
+            Set<File> directories = new HashSet<>();
+            Enumeration<? extends ZipEntry> enumeration = zip.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry entry = enumeration.nextElement();
+                File target = new File(outDir, entry.getName());
+                if (!(target.getCanonicalPath() + File.separator).startsWith(root)) {
+                    throw new IOException("zip entry " + entry.getName() + " is outside of " + outDir);
+                }
+                if (entry.isDirectory()) {
+                    directories.add(target);
+                } else {
+                    directories.add(target.getParentFile());
+                    entries.add(entry);
+                    total += Math.max(0, entry.getSize());
+                }
+            }
+            for (File directory : directories) {
+                if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                    throw new IOException("can not create " + directory);
                 }
+            }
+        } finally {
+            zip.close();
+        }
+        Collections.sort(entries, new Comparator<ZipEntry>() {
+            @Override
+            public int compare(ZipEntry lhs, ZipEntry rhs) {
+                long l = lhs.getSize();
+                long r = rhs.getSize();
+                return l < r ? 1 : (l == r ? 0 : -1);
+            }
+        });
+        for (ZipEntry entry : entries) {
+            targets.add(new File(outDir, entry.getName()));
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final ProgressAggregator progress = new ProgressAggregator(listener);
+        progress.setTotal(total);
+        final AtomicLong compressed = new AtomicLong();
+        Callable<Void> worker = new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                ZipFile zip = new ZipFile(path);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try {
+                    int index;
+                    while ((index = next.getAndIncrement()) < entries.size()) {
+                        ZipEntry entry = entries.get(index);
+                        long bytes = extract(zip, entry, targets.get(index), buffer);
+                        compressed.addAndGet(Math.max(0, entry.getCompressedSize()));
+                        progress.add(bytes);
+                    }
+                } catch (IOException e) {
+                    // 其他线程不再领取新的条目
+                    next.set(entries.size());
+                    throw e;
+                } finally {
+                    zip.close();
+                }
+                return null;
+            }
+        };
+        runWorkers(worker, Math.max(1, Math.min(threads, entries.size())));
+
+        ZipStats stats = new ZipStats();
+        stats.entries = entries.size();
+        stats.uncompressedBytes = progress.get();
+        stats.compressedBytes = compressed.get();
+        stats.elapsedMillis = System.currentTimeMillis() - start;
+        return stats;
+    }
+
+    private static long extract(ZipFile zip, ZipEntry entry, File target, byte[] buffer) throws IOException {
+        InputStream in = zip.getInputStream(entry);
+        FileOutputStream out = null;
+        long bytes = 0;
+        try {
+            out = new FileOutputStream(target);
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                bytes += read;
+            }
+        } finally {
+            in.close();
+            if (out != null) {
                 out.close();
             }
         }
-        inZip.close();
+        return bytes;
+    }
+
+    /**
+     * 在调用线程和threads - 1个临时线程中执行worker，等待全部结束后抛出第一个异常
+     */
+    private static void runWorkers(Callable<Void> worker, int threads) throws IOException {
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads - 1) : null;
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            futures.add(executor.submit(worker));
+        }
+        IOException failure = null;
+        try {
+            if (threads > 0) {
+                worker.call();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (Exception e) {
+            failure = new IOException(e);
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new IOException(e);
+                }
+            }
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     /**
@@ -63,57 +234,543 @@ public class ZipUtils {
      * @throws Exception
      */
     public static void ZipFolder(String srcFileString, String zipFileString) throws Exception {
-        //create ZIP
-        ZipOutputStream outZip = new ZipOutputStream(new FileOutputStream(zipFileString));
-        //create the file
-        File file = new File(srcFileString);
-        //compress
-        ZipFiles(file.getParent() + File.separator, file.getName(), outZip);
-        //finish and close
-        outZip.finish();
-        outZip.close();
+        zip(new File(srcFileString), new File(zipFileString), DEFAULT_THREADS, null);
     }
 
     /**
-     * compress files
+     * 多线程压缩，使用默认压缩级别，已经压缩过的图片、音视频和压缩包直接存储
      *
-     * @param folderString
-     * @param fileString
-     * @param zipOutputSteam
-     * @throws Exception
+     * @see #zip(File, File, int, int, Map, OnProgressListener)
+     */
+    public static ZipStats zip(File source, File zipFile, int threads, OnProgressListener listener)
+            throws IOException {
+        return zip(source, zipFile, threads, Deflater.DEFAULT_COMPRESSION, defaultLevels(), listener);
+    }
+
+    /**
+     * 流式压缩，边压缩边写入输出，不生成临时文件，使用默认压缩级别，已经压缩过的格式直接存储
+     * 条目名与{@link #ZipFolder}相同
+     *
+     * @param source   要压缩的文件或文件夹
+     * @param out      输出，完成后不会关闭
+     * @param listener 进度回调(已写入的原始字节数，总字节数)，可以为null，每个文件完成后回调
+     * @return 条目数、字节数和速度
+     * @see ZipStreamWriter
+     */
+    public static ZipStats zip(File source, OutputStream out, OnProgressListener listener) throws IOException {
+        long start = System.currentTimeMillis();
+        if (!source.exists()) {
+            throw new FileNotFoundException(source.getPath());
+        }
+        List<CompressItem> items = new ArrayList<>();
+        long total = collect(source, source.getName(), Deflater.DEFAULT_COMPRESSION, null, items);
+        ZipStreamWriter writer = new ZipStreamWriter(out);
+        long reported = 0;
+        for (CompressItem item : items) {
+            if (item.directory) {
+                writer.putDirectory(item.name, item.time);
+                continue;
+            }
+            writer.putFile(item.file, item.name);
+            long written = writer.getBytesIn();
+            if (listener != null && (written - reported >= FileUtils.DEFAULT_PROGRESS_INTERVAL || written == total)) {
+                reported = written;
+                listener.onProgress(written, total);
+            }
+        }
+        writer.finish();
+        ZipStats stats = new ZipStats();
+        stats.entries = writer.getEntries();
+        stats.compressedBytes = writer.getCompressedBytes();
+        stats.uncompressedBytes = writer.getBytesIn();
+        stats.elapsedMillis = System.currentTimeMillis() - start;
+        return stats;
+    }
+
+    /**
+     * 流式压缩到WritableByteChannel，完成后不会关闭
+     *
+     * @see #zip(File, OutputStream, OnProgressListener)
+     */
+    public static ZipStats zip(File source, WritableByteChannel channel, OnProgressListener listener)
+            throws IOException {
+        return zip(source, Channels.newOutputStream(channel), listener);
+    }
+
+    /**
+     * 默认的按扩展名指定的压缩级别，已经压缩过的格式为0(直接存储)，返回的Map可以修改
      */
-    private static void ZipFiles(String folderString, String fileString, ZipOutputStream zipOutputSteam) throws Exception {
-        if (zipOutputSteam == null)
-            return;
-        File file = new File(folderString + fileString);
+    public static Map<String, Integer> defaultLevels() {
+        Map<String, Integer> levels = new HashMap<>();
+        for (String extension : STORED_EXTENSIONS) {
+            levels.put(extension, Deflater.NO_COMPRESSION);
+        }
+        return levels;
+    }
+
+    /**
+     * 多线程压缩
+     * 每个文件由工作线程单独deflate到内存(较小时)或临时文件中，调用线程按顺序把压缩好的数据拼接成一个ZIP，
+     * 压缩和写入同时进行，压缩最多领先写入每线程4个条目。压缩后没有变小的文件改为直接存储
+     * 条目名与{@link #ZipFolder}相同，以源文件(夹)的名字开头，空目录保留为目录条目
+     *
+     * @param source           要压缩的文件或文件夹
+     * @param zipFile          生成的ZIP文件，失败时删除
+     * @param threads          压缩线程数(调用线程负责写入，不计在内)
+     * @param level            压缩级别(0-9)
+     * @param levelByExtension 按扩展名(小写，不含点)指定的压缩级别，0表示直接存储，可以为null
+     * @param listener         进度回调(已写入的原始字节数，总字节数)，可以为null，在调用线程中回调
+     * @return 条目数、字节数和速度
+     * @throws IOException 读写出错，或超过ZIP32的限制(4GB，65535个条目)
+     */
+    public static ZipStats zip(File source, File zipFile, int threads, int level,
+                               Map<String, Integer> levelByExtension, OnProgressListener listener)
+            throws IOException {
+        return writeZip(source, zipFile, null, threads, level, levelByExtension, listener);
+    }
+
+    /**
+     * 增量更新，使用默认压缩级别
+     *
+     * @see #update(File, File, int, int, Map, OnProgressListener)
+     */
+    public static ZipStats update(File source, File zipFile, int threads, OnProgressListener listener)
+            throws IOException {
+        return update(source, zipFile, threads, Deflater.DEFAULT_COMPRESSION, defaultLevels(), listener);
+    }
+
+    /**
+     * 增量更新已有的ZIP，结果与{@link #zip}相同
+     * 与ZIP中同名条目的大小和修改时间都相同的文件不再读取，修改时间不同但大小相同的文件先计算CRC32，
+     * 相同时也认为没有变化。没有变化的条目直接复制压缩后的数据，只有变化和新增的文件需要压缩，
+     * 源文件夹中已不存在的条目被移除
+     * 先写入zipFile.tmp，完成后替换原文件；原文件不存在或无法解析时完整压缩
+     *
+     * @return 条目数、字节数和速度，{@link ZipStats#getReusedEntries()}为直接复制的条目数
+     * @throws IOException 读写出错，原文件保持不变
+     */
+    public static ZipStats update(File source, File zipFile, int threads, int level,
+                                  Map<String, Integer> levelByExtension, OnProgressListener listener)
+            throws IOException {
+        ZipReader previous;
+        try {
+            previous = zipFile.isFile() ? new ZipReader(zipFile) : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            previous = null;
+        }
+        if (previous == null) {
+            return writeZip(source, zipFile, null, threads, level, levelByExtension, listener);
+        }
+        File temp = new File(zipFile.getPath() + ".tmp");
+        ZipStats stats;
+        try {
+            stats = writeZip(source, temp, previous, threads, level, levelByExtension, listener);
+        } finally {
+            previous.close();
+        }
+        if (!temp.renameTo(zipFile) && !(zipFile.delete() && temp.renameTo(zipFile))) {
+            temp.delete();
+            throw new IOException("can not replace " + zipFile);
+        }
+        return stats;
+    }
+
+    /**
+     * @param previous 旧的ZIP，不为null时复制其中没有变化的条目
+     */
+    private static ZipStats writeZip(File source, File zipFile, ZipReader previous, int threads, int level,
+                                     Map<String, Integer> levelByExtension, OnProgressListener listener)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        if (!source.exists()) {
+            throw new FileNotFoundException(source.getPath());
+        }
+        final List<CompressItem> items = new ArrayList<>();
+        long total = collect(source, source.getName(), level, levelByExtension, items);
+        if (previous != null) {
+            for (CompressItem item : items) {
+                if (!item.directory) {
+                    item.setPrevious(previous.getEntry(item.name));
+                }
+            }
+        }
+        final File tempDir = zipFile.getAbsoluteFile().getParentFile();
+        final AtomicInteger next = new AtomicInteger();
+        int count = Math.max(1, Math.min(threads, items.size()));
+        final LookAhead lookAhead = new LookAhead(count * LOOK_AHEAD_PER_THREAD);
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                byte[] input = new byte[BUFFER_SIZE];
+                byte[] output = new byte[BUFFER_SIZE];
+                try {
+                    int index;
+                    while ((index = next.getAndIncrement()) < items.size() && lookAhead.await(index)) {
+                        CompressItem item = items.get(index);
+                        if (item.directory || item.reuse) {
+                            continue;
+                        }
+                        try {
+                            item.compress(deflater, input, output, tempDir);
+                        } catch (IOException e) {
+                            item.failure = e;
+                        } catch (RuntimeException e) {
+                            item.failure = new IOException(e);
+                        } finally {
+                            if (item.failure != null) {
+                                next.set(items.size());
+                            }
+                            item.finish();
+                        }
+                    }
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+
+        // 先打开输出，打不开时还没有开始压缩，不需要清理
+        FileOutputStream out = new FileOutputStream(zipFile);
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        for (int i = 0; i < count; i++) {
+            executor.execute(worker);
+        }
+        ZipStats stats = new ZipStats();
+        boolean success = false;
+        try {
+            ZipWriter writer = new ZipWriter(out);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long written = 0;
+            long reported = 0;
+            for (int i = 0; i < items.size(); i++) {
+                lookAhead.moveTo(i);
+                CompressItem item = items.get(i);
+                item.await();
+                if (item.failure != null) {
+                    throw item.failure;
+                }
+                if (item.directory) {
+                    writer.putDirectory(item.name, item.time);
+                    continue;
+                }
+                if (item.reuse) {
+                    ZipReader.Entry entry = item.previous;
+                    writer.putEntry(item.name, item.time, entry.getMethod(), entry.getCrc(),
+                            entry.getCompressedSize(), entry.getSize());
+                    InputStream in = previous.getRawInputStream(entry);
+                    try {
+                        writer.write(in, buffer);
+                    } finally {
+                        in.close();
+                    }
+                    stats.reusedEntries++;
+                } else if (item.data != null) {
+                    writer.putEntry(item.name, item.time, item.method, item.crc, item.compressedSize, item.size);
+                    writer.write(item.data, 0, item.data.length);
+                    item.data = null;
+                } else {
+                    writer.putEntry(item.name, item.time, item.method, item.crc, item.compressedSize, item.size);
+                    InputStream in = new FileInputStream(item.method == ZipWriter.METHOD_STORED ? item.file : item.temp);
+                    try {
+                        writer.write(in, buffer);
+                    } finally {
+                        in.close();
+                    }
+                    item.deleteTemp();
+                }
+                stats.entries++;
+                stats.compressedBytes += item.reuse ? item.previous.getCompressedSize() : item.compressedSize;
+                written += item.reuse ? item.previous.getSize() : item.size;
+                if (listener != null && (written - reported >= FileUtils.DEFAULT_PROGRESS_INTERVAL || written == total)) {
+                    reported = written;
+                    listener.onProgress(written, total);
+                }
+            }
+            writer.finish();
+            stats.uncompressedBytes = written;
+            success = true;
+        } finally {
+            // 出错时让工作线程尽快结束，并清理剩下的临时文件
+            next.set(items.size());
+            lookAhead.close();
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (CompressItem item : items) {
+                item.deleteTemp();
+            }
+            out.close();
+            if (!success) {
+                zipFile.delete();
+            }
+        }
+        stats.elapsedMillis = System.currentTimeMillis() - start;
+        return stats;
+    }
+
+    /**
+     * 按{@link #ZipFolder}的顺序收集要压缩的文件和空目录
+     *
+     * @return 文件的总大小
+     */
+    private static long collect(File file, String name, int level, Map<String, Integer> levelByExtension,
+                                List<CompressItem> items) {
         if (file.isFile()) {
-            ZipEntry zipEntry = new ZipEntry(fileString);
-            FileInputStream inputStream = new FileInputStream(file);
-            zipOutputSteam.putNextEntry(zipEntry);
-            int len;
-            byte[] buffer = new byte[4096];
-            while ((len = inputStream.read(buffer)) != -1) {
-                zipOutputSteam.write(buffer, 0, len);
+            items.add(new CompressItem(file, name, false, levelFor(name, level, levelByExtension)));
+            return file.length();
+        }
+        String[] children = file.list();
+        if (children == null) {
+            return 0;
+        }
+        if (children.length == 0) {
+            CompressItem item = new CompressItem(file, name + "/", true, 0);
+            item.finish();
+            items.add(item);
+            return 0;
+        }
+        long total = 0;
+        for (String child : children) {
+            total += collect(new File(file, child), name + "/" + child, level, levelByExtension, items);
+        }
+        return total;
+    }
+
+    /**
+     * @return 按扩展名指定的压缩级别，没有指定时为level
+     */
+    static int levelFor(String name, int level, Map<String, Integer> levelByExtension) {
+        if (levelByExtension != null) {
+            int dot = name.lastIndexOf('.');
+            Integer value = dot < 0 ? null : levelByExtension.get(name.substring(dot + 1).toLowerCase(Locale.US));
+            if (value != null) {
+                return value;
             }
-            zipOutputSteam.closeEntry();
-        } else {
-            //folder
-            String fileList[] = file.list();
-            //no child file and compress
-            if (fileList.length <= 0) {
-                ZipEntry zipEntry = new ZipEntry(fileString + File.separator);
-                zipOutputSteam.putNextEntry(zipEntry);
-                zipOutputSteam.closeEntry();
+        }
+        return level;
+    }
+
+    /**
+     * 压缩线程领取的条目不能超过写入位置之后window个，写入跟不上时压缩线程等待，不会无限积压
+     * 写入线程等待的条目一定在窗口内，已被领取且不会等待，所以不会死锁
+     */
+    private static final class LookAhead {
+
+        private final int window;
+        private int position;
+        private boolean closed;
+
+        LookAhead(int window) {
+            this.window = window;
+        }
+
+        /**
+         * 等待写入位置接近index
+         *
+         * @return false表示已关闭，不再压缩
+         */
+        synchronized boolean await(int index) {
+            while (!closed && index >= position + window) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return !closed;
+        }
+
+        synchronized void moveTo(int index) {
+            position = index;
+            notifyAll();
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * 一个待压缩的条目，由工作线程压缩，调用线程等待完成后写入
+     */
+    private static final class CompressItem {
+
+        /**
+         * 压缩后不超过这个大小时保存在内存中，否则写入临时文件
+         */
+        private static final int MEMORY_LIMIT = 256 * 1024;
+
+        final File file;
+        final String name;
+        final boolean directory;
+        final int level;
+        final long time;
+        int method = ZipWriter.METHOD_STORED;
+        long crc;
+        long size;
+        long compressedSize;
+        byte[] data;
+        File temp;
+        /**
+         * 旧ZIP中的同名条目
+         */
+        ZipReader.Entry previous;
+        /**
+         * 是否直接复制旧条目
+         */
+        boolean reuse;
+        IOException failure;
+        private boolean finished;
+
+        CompressItem(File file, String name, boolean directory, int level) {
+            this.file = file;
+            this.name = name;
+            this.directory = directory;
+            this.level = level;
+            this.time = file.lastModified();
+        }
+
+        /**
+         * 设置旧ZIP中的同名条目，大小相同且修改时间在条目时间之后2秒内(ZIP的时间精度)时直接复制，
+         * 大小不同的条目不可能没有变化，不再保留
+         */
+        void setPrevious(ZipReader.Entry entry) {
+            if (entry == null || entry.isDirectory() || entry.getSize() != file.length()) {
+                return;
+            }
+            previous = entry;
+            long delta = time - entry.getTime();
+            if (delta >= 0 && delta < 2000) {
+                reuse = true;
+                finish();
+            }
+        }
+
+        /**
+         * 计算CRC32，level不为0时同时deflate，压缩后没有变小则改为直接存储
+         * 有大小相同的旧条目时先只计算CRC32，与旧条目相同时直接复制
+         */
+        void compress(Deflater deflater, byte[] input, byte[] output, File tempDir) throws IOException {
+            if (previous != null) {
+                if (checksum(input) == previous.getCrc()) {
+                    reuse = true;
+                    return;
+                }
+                previous = null;
+            }
+            CRC32 checksum = new CRC32();
+            ByteArrayOutputStream memory = level == Deflater.NO_COMPRESSION ? null : new ByteArrayOutputStream();
+            OutputStream target = memory;
+            if (memory != null) {
+                deflater.reset();
+                deflater.setLevel(level);
+            }
+            InputStream in = new FileInputStream(file);
+            try {
+                int read;
+                while ((read = in.read(input)) != -1) {
+                    checksum.update(input, 0, read);
+                    size += read;
+                    if (target == null) {
+                        continue;
+                    }
+                    deflater.setInput(input, 0, read);
+                    while (!deflater.needsInput()) {
+                        target = deflate(deflater, output, memory, target, tempDir);
+                    }
+                }
+                if (target != null) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        target = deflate(deflater, output, memory, target, tempDir);
+                    }
+                    target.close();
+                }
+            } catch (IOException e) {
+                if (target != null && target != memory) {
+                    target.close();
+                }
+                throw e;
+            } finally {
+                in.close();
+            }
+            crc = checksum.getValue();
+            compressedSize = size;
+            if (target != null && deflater.getBytesWritten() < size) {
+                method = ZipWriter.METHOD_DEFLATED;
+                compressedSize = deflater.getBytesWritten();
+                if (target == memory) {
+                    data = memory.toByteArray();
+                }
+            } else {
+                deleteTemp();
+            }
+        }
+
+        private long checksum(byte[] input) throws IOException {
+            CRC32 checksum = new CRC32();
+            InputStream in = new FileInputStream(file);
+            try {
+                int read;
+                while ((read = in.read(input)) != -1) {
+                    checksum.update(input, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+            return checksum.getValue();
+        }
+
+        /**
+         * 输出一段压缩数据，内存中的数据超过{@link #MEMORY_LIMIT}时转存到临时文件
+         */
+        private OutputStream deflate(Deflater deflater, byte[] output, ByteArrayOutputStream memory,
+                                     OutputStream target, File tempDir) throws IOException {
+            int length = deflater.deflate(output);
+            if (target == memory && memory.size() + length > MEMORY_LIMIT) {
+                temp = File.createTempFile("zip", ".tmp", tempDir);
+                target = new FileOutputStream(temp);
+                memory.writeTo(target);
+                memory.reset();
+            }
+            target.write(output, 0, length);
+            return target;
+        }
+
+        synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+
+        synchronized void await() throws IOException {
+            while (!finished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+
+        void deleteTemp() {
+            if (temp != null) {
+                temp.delete();
+                temp = null;
             }
-            //child files and recursion
-            for (int i = 0; i < fileList.length; i++) {
-                ZipFiles(folderString, fileString + File.separator + fileList[i], zipOutputSteam);
-            }//end of for
         }
     }
 
     /**
      * return the InputStream of file in the ZIP
+     * 使用共享的{@link ZipReader}，多次调用不会重复打开和解析ZIP
      *
      * @param zipFileString name of ZIP
      * @param fileString    name of file in the ZIP
@@ -121,13 +778,12 @@ public class ZipUtils {
      * @throws Exception
      */
     public static InputStream UpZip(String zipFileString, String fileString) throws Exception {
-        ZipFile zipFile = new ZipFile(zipFileString);
-        ZipEntry zipEntry = zipFile.getEntry(fileString);
-        return zipFile.getInputStream(zipEntry);
+        return ZipReader.get(new File(zipFileString)).getInputStream(fileString);
     }
 
     /**
      * return files list(file and folder) in the ZIP
+     * 只读取中央目录，不需要读取整个ZIP
      *
      * @param zipFileString  ZIP name
      * @param bContainFolder contain folder or not
@@ -137,27 +793,17 @@ public class ZipUtils {
      */
     public static List<File> GetFileList(String zipFileString, boolean bContainFolder, boolean bContainFile) throws Exception {
         List<File> fileList = new ArrayList<File>();
-        ZipInputStream inZip = new ZipInputStream(new FileInputStream(zipFileString));
-        ZipEntry zipEntry;
-        String szName = "";
-        while ((zipEntry = inZip.getNextEntry()) != null) {
-            szName = zipEntry.getName();
-            if (zipEntry.isDirectory()) {
+        for (ZipReader.Entry entry : ZipReader.get(new File(zipFileString)).getEntries()) {
+            String szName = entry.getName();
+            if (entry.isDirectory()) {
                 // get the folder name of the widget
-                szName = szName.substring(0, szName.length() - 1);
-                File folder = new File(szName);
                 if (bContainFolder) {
-                    fileList.add(folder);
-                }
-
-            } else {
-                File file = new File(szName);
-                if (bContainFile) {
-                    fileList.add(file);
+                    fileList.add(new File(szName.substring(0, szName.length() - 1)));
                 }
+            } else if (bContainFile) {
+                fileList.add(new File(szName));
             }
         }
-        inZip.close();
         return fileList;
     }
 }
@@ -0,0 +1,305 @@
+package com.xuxin.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * 直接按ZIP格式写出已压缩好的条目
+ * 与ZipOutputStream不同，条目的数据(已经deflate过或原样存储)、CRC32和大小由调用方提供，
+ * 因此可以在多个线程中分别压缩后按顺序拼接，也可以把其他ZIP中的条目原样复制过来
+ * 大小和CRC32事先未知时可以使用{@link #putEntry(String, long)}，写完数据后由{@link #closeEntry}
+ * 在数据后写入数据描述符(通用标志位3)，这种条目只能是deflate压缩的
+ * 只支持ZIP32(单个文件和整个ZIP小于4GB，条目少于65535个)，文件名使用UTF-8
+ * <pre>
+ * writer.putEntry(name, time, ZipWriter.METHOD_DEFLATED, crc, compressedSize, size);
+ * writer.write(data, 0, data.length);
+ * ...
+ * writer.finish();
+ * </pre>
+ */
+final class ZipWriter {
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int DESCRIPTOR_SIGNATURE = 0x08074b50;
+    /**
+     * 通用标志位3: CRC32和大小在数据之后的数据描述符中
+     */
+    private static final int FLAG_DESCRIPTOR = 0x0008;
+    /**
+     * 通用标志位11: 文件名使用UTF-8
+     */
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final OutputStream out;
+    private final List<Entry> entries = new ArrayList<>();
+    private final byte[] header = new byte[46];
+    private final Calendar calendar = Calendar.getInstance();
+    private long offset;
+    /**
+     * 当前条目还需要写入的字节数
+     */
+    private long remaining;
+    /**
+     * 使用数据描述符的当前条目，没有时为null
+     */
+    private Entry streaming;
+
+    /**
+     * @param out 输出，finish时不会关闭
+     */
+    ZipWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    /**
+     * 写入一个条目的本地文件头，之后必须调用write写入正好compressedSize字节的数据
+     *
+     * @param name           条目名，目录以'/'结尾
+     * @param time           修改时间(System.currentTimeMillis)
+     * @param method         {@link #METHOD_STORED}或{@link #METHOD_DEFLATED}
+     * @param crc            原始数据的CRC32
+     * @param compressedSize 写入的数据的大小
+     * @param size           原始数据的大小
+     */
+    void putEntry(String name, long time, int method, long crc, long compressedSize, long size) throws IOException {
+        if (compressedSize > MAX_32 || size > MAX_32) {
+            throw new IOException("zip64 is not supported");
+        }
+        Entry entry = addEntry(name, time, method, 0);
+        entry.crc = crc;
+        entry.compressedSize = compressedSize;
+        entry.size = size;
+        writeLocalHeader(entry);
+        remaining = compressedSize;
+    }
+
+    /**
+     * 写入一个大小未知的deflate条目的本地文件头，之后调用write写入压缩后的数据，最后调用{@link #closeEntry}
+     *
+     * @param name 条目名
+     * @param time 修改时间(System.currentTimeMillis)
+     */
+    void putEntry(String name, long time) throws IOException {
+        Entry entry = addEntry(name, time, METHOD_DEFLATED, FLAG_DESCRIPTOR);
+        writeLocalHeader(entry);
+        streaming = entry;
+    }
+
+    /**
+     * 结束{@link #putEntry(String, long)}开始的条目，写入数据描述符
+     *
+     * @param crc  原始数据的CRC32
+     * @param size 原始数据的大小
+     */
+    void closeEntry(long crc, long size) throws IOException {
+        Entry entry = streaming;
+        if (entry == null) {
+            throw new IOException("no streaming entry");
+        }
+        streaming = null;
+        if (entry.compressedSize > MAX_32 || size > MAX_32) {
+            throw new IOException("zip64 is not supported");
+        }
+        entry.crc = crc;
+        entry.size = size;
+        int p = 0;
+        p = putInt(header, p, DESCRIPTOR_SIGNATURE);
+        p = putInt(header, p, (int) crc);
+        p = putInt(header, p, (int) entry.compressedSize);
+        p = putInt(header, p, (int) size);
+        writeBytes(header, 0, p);
+    }
+
+    private Entry addEntry(String name, long time, int method, int flags) throws IOException {
+        if (remaining != 0 || streaming != null) {
+            throw new IOException("previous entry is incomplete");
+        }
+        if (offset > MAX_32 || entries.size() >= 0xFFFF) {
+            throw new IOException("zip64 is not supported");
+        }
+        Entry entry = new Entry();
+        entry.name = name.getBytes(UTF_8);
+        entry.dosTime = dosTime(time);
+        entry.method = method;
+        entry.flags = FLAG_UTF8 | flags;
+        entry.offset = offset;
+        entries.add(entry);
+        return entry;
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        int p = 0;
+        p = putInt(header, p, LOCAL_HEADER_SIGNATURE);
+        p = putShort(header, p, entry.method == METHOD_STORED ? 10 : 20);
+        p = putShort(header, p, entry.flags);
+        p = putShort(header, p, entry.method);
+        p = putInt(header, p, entry.dosTime);
+        p = putInt(header, p, (int) entry.crc);
+        p = putInt(header, p, (int) entry.compressedSize);
+        p = putInt(header, p, (int) entry.size);
+        p = putShort(header, p, entry.name.length);
+        p = putShort(header, p, 0);
+        writeBytes(header, 0, p);
+        writeBytes(entry.name, 0, entry.name.length);
+    }
+
+    /**
+     * 写入一个目录条目
+     */
+    void putDirectory(String name, long time) throws IOException {
+        putEntry(name.endsWith("/") ? name : name + "/", time, METHOD_STORED, 0, 0, 0);
+    }
+
+    /**
+     * 写入当前条目的数据
+     */
+    void write(byte[] bytes, int off, int len) throws IOException {
+        if (streaming != null) {
+            writeBytes(bytes, off, len);
+            streaming.compressedSize += len;
+            return;
+        }
+        if (len > remaining) {
+            throw new IOException("entry data exceeds compressed size");
+        }
+        writeBytes(bytes, off, len);
+        remaining -= len;
+    }
+
+    /**
+     * 从输入流中读取当前条目剩余的全部数据，不会关闭输入流，不能用于大小未知的条目
+     */
+    void write(InputStream in, byte[] buffer) throws IOException {
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new IOException("unexpected end of entry data, " + remaining + " bytes missing");
+            }
+            write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * @return 已写出的字节数
+     */
+    long getBytesWritten() {
+        return offset;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * 写入中央目录并flush，不会关闭输出流
+     */
+    void finish() throws IOException {
+        if (streaming != null) {
+            throw new IOException("last entry is not closed");
+        }
+        if (remaining != 0) {
+            throw new IOException("last entry is incomplete, " + remaining + " bytes missing");
+        }
+        long start = offset;
+        if (start > MAX_32) {
+            throw new IOException("zip64 is not supported");
+        }
+        for (Entry entry : entries) {
+            int p = 0;
+            p = putInt(header, p, CENTRAL_HEADER_SIGNATURE);
+            p = putShort(header, p, 20);
+            p = putShort(header, p, entry.method == METHOD_STORED ? 10 : 20);
+            p = putShort(header, p, entry.flags);
+            p = putShort(header, p, entry.method);
+            p = putInt(header, p, entry.dosTime);
+            p = putInt(header, p, (int) entry.crc);
+            p = putInt(header, p, (int) entry.compressedSize);
+            p = putInt(header, p, (int) entry.size);
+            p = putShort(header, p, entry.name.length);
+            p = putShort(header, p, 0);
+            p = putShort(header, p, 0);
+            p = putShort(header, p, 0);
+            p = putShort(header, p, 0);
+            p = putInt(header, p, 0);
+            p = putInt(header, p, (int) entry.offset);
+            writeBytes(header, 0, p);
+            writeBytes(entry.name, 0, entry.name.length);
+        }
+        long size = offset - start;
+        int p = 0;
+        p = putInt(header, p, END_SIGNATURE);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, entries.size());
+        p = putShort(header, p, entries.size());
+        p = putInt(header, p, (int) size);
+        p = putInt(header, p, (int) start);
+        p = putShort(header, p, 0);
+        writeBytes(header, 0, p);
+        out.flush();
+    }
+
+    private void writeBytes(byte[] bytes, int off, int len) throws IOException {
+        out.write(bytes, off, len);
+        offset += len;
+    }
+
+    /**
+     * 转换为MS-DOS格式的日期时间，1980年之前的时间按1980年1月1日处理
+     */
+    private int dosTime(long time) {
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static int putShort(byte[] bytes, int p, int value) {
+        bytes[p] = (byte) value;
+        bytes[p + 1] = (byte) (value >>> 8);
+        return p + 2;
+    }
+
+    private static int putInt(byte[] bytes, int p, int value) {
+        bytes[p] = (byte) value;
+        bytes[p + 1] = (byte) (value >>> 8);
+        bytes[p + 2] = (byte) (value >>> 16);
+        bytes[p + 3] = (byte) (value >>> 24);
+        return p + 4;
+    }
+
+    /**
+     * 中央目录中的一条记录
+     */
+    private static final class Entry {
+
+        byte[] name;
+        int dosTime;
+        int method;
+        int flags;
+        long crc;
+        long compressedSize;
+        long size;
+        long offset;
+    }
+}
@@ -0,0 +1,14 @@
+package com.xuxin.utils.listener;
+
+/**
+ * 文件读写进度回调
+ * 在执行读写的线程中回调，不要做耗时操作
+ */
+public interface OnProgressListener {
+
+    /**
+     * @param current 已处理的字节数
+     * @param total   总字节数，未知时为-1
+     */
+    void onProgress(long current, long total);
+}
@@ -0,0 +1,89 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 后台分批清理：按字节数分多轮完成，完成后释放线程
+ */
+public class CleanupSchedulerTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("cleanup", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        for (int i = 0; i < 5; i++) {
+            File child = new File(dir, "d" + i + "/sub");
+            assertTrue(child.mkdirs());
+            for (int j = 0; j < 4; j++) {
+                write(new File(child, "f" + j), 1000);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void runsUntilFinishedWithinByteBudget() {
+        CleanupScheduler scheduler = new CleanupScheduler(1000, 3000, 0);
+        scheduler.addJob("test", dir, false);
+        int rounds = 0;
+        CleanupScheduler.Run run;
+        while ((run = scheduler.runOnce()) != null) {
+            assertTrue(run.getFreedBytes() <= 3000);
+            rounds++;
+            assertTrue(rounds < 100);
+        }
+        assertTrue(rounds >= 7);
+        assertTrue(scheduler.isFinished());
+        assertEquals(20, scheduler.getTotalDeletedFiles());
+        assertEquals(20000, scheduler.getTotalFreedBytes());
+        assertTrue(dir.isDirectory());
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void releasesThreadWhenFinished() throws Exception {
+        CleanupScheduler scheduler = new CleanupScheduler(50, 4000, 1);
+        scheduler.addJob("test", dir, true);
+        scheduler.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (schedulerThreadAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(schedulerThreadAlive());
+        assertTrue(scheduler.isFinished());
+        assertFalse(dir.exists());
+    }
+
+    private static boolean schedulerThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("CleanupScheduler") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
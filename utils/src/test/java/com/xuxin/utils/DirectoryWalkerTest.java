@@ -0,0 +1,82 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多线程统计和删除目录：结果与单线程一致，达到字节数限制时提前停止
+ */
+public class DirectoryWalkerTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("walker", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        // 4个一级子目录，每个下面3层，每层5个100字节的文件
+        for (int i = 0; i < 4; i++) {
+            File parent = new File(dir, "d" + i);
+            for (int depth = 0; depth < 3; depth++) {
+                assertTrue(parent.mkdirs());
+                for (int j = 0; j < 5; j++) {
+                    write(new File(parent, "f" + j), 100);
+                }
+                parent = new File(parent, "sub");
+            }
+        }
+        write(new File(dir, "top"), 10);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void scanMatchesSingleThread() {
+        DirectoryUsage single = DirectoryUsage.scan(dir, 1, DirectoryUsage.UNLIMITED, DirectoryUsage.UNLIMITED);
+        DirectoryUsage multi = DirectoryUsage.scan(dir, 4, DirectoryUsage.UNLIMITED, DirectoryUsage.UNLIMITED);
+        assertTrue(multi.isComplete());
+        assertEquals(4 * 3 * 5 * 100 + 10, single.getTotalBytes());
+        assertEquals(single.getTotalBytes(), multi.getTotalBytes());
+        assertEquals(61, multi.getFileCount());
+        assertEquals(12, multi.getDirectoryCount());
+        assertEquals(10, multi.getDirectBytes());
+        assertEquals(Long.valueOf(1500), multi.getChildren().get("d2"));
+    }
+
+    @Test
+    public void scanStopsAtByteBudget() {
+        DirectoryUsage usage = DirectoryUsage.scan(dir, 4, 1000, DirectoryUsage.UNLIMITED);
+        assertFalse(usage.isComplete());
+        assertTrue(usage.getTotalBytes() >= 1000);
+    }
+
+    @Test
+    public void deleteRemovesTree() {
+        DeleteResult result = DirectoryDeleter.delete(dir, false, 4, null);
+        assertEquals(61, result.getDeletedFiles());
+        assertEquals(12, result.getDeletedDirectories());
+        assertEquals(0, result.getFailedCount());
+        assertTrue(dir.isDirectory());
+        assertEquals(0, dir.list().length);
+    }
+}
@@ -0,0 +1,76 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * 磁盘缓存的写入和淘汰：超过上限的内容不缓存，新写入的文件不会被立即淘汰
+ */
+public class DiskCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("cache", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void oversizedEntryIsRejected() throws Exception {
+        DiskCache cache = DiskCache.open(dir, 100);
+        assertNotNull(cache.put("small", new byte[40]));
+        assertNotNull(cache.put("big", new byte[40]));
+        assertNull(cache.put("big", new byte[101]));
+        assertFalse(cache.contains("big"));
+        assertTrue(cache.contains("small"));
+        assertEquals(40, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void newEntrySurvivesLfuEviction() throws Exception {
+        DiskCache cache = DiskCache.open(dir, 100, DiskCache.POLICY_LFU);
+        cache.put("a", new byte[50]);
+        cache.put("b", new byte[50]);
+        cache.get("a");
+        cache.get("b");
+        File file = cache.put("c", new byte[50]);
+        assertNotNull(file);
+        assertTrue(file.exists());
+        assertTrue(cache.contains("c"));
+        assertEquals(100, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void openedStreamSurvivesRemove() throws Exception {
+        DiskCache cache = DiskCache.open(dir, 100);
+        cache.put("key", new byte[]{1, 2, 3});
+        InputStream in = cache.getInputStream("key");
+        assertNotNull(in);
+        try {
+            cache.remove("key");
+            assertEquals(1, in.read());
+            assertEquals(2, in.read());
+            assertEquals(3, in.read());
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+        assertNull(cache.getInputStream("key"));
+        cache.close();
+    }
+}
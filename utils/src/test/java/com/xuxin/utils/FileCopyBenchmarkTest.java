@@ -0,0 +1,120 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * 文件复制的基准：原来的1KB缓冲流复制与{@link FileUtils#copyFile(File, File, com.xuxin.utils.listener.OnProgressListener)}
+ * 默认测试1MB到64MB，gradle test -Dcopy.benchmark.maxMb=1024可以测到1GB(需要足够的磁盘空间)
+ */
+public class FileCopyBenchmarkTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("copy", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void copySizes() throws Exception {
+        int maxMb = Integer.getInteger("copy.benchmark.maxMb", 64);
+        for (int sizeMb = 1; sizeMb <= maxMb; sizeMb *= 4) {
+            File source = new File(dir, "source-" + sizeMb);
+            long crc = createFile(source, (long) sizeMb * MB);
+
+            File streamCopy = new File(dir, "stream-" + sizeMb);
+            long start = System.nanoTime();
+            streamCopy(source, streamCopy);
+            long streamNanos = System.nanoTime() - start;
+            assertEquals(crc, crc(streamCopy));
+            streamCopy.delete();
+
+            File channelCopy = new File(dir, "channel-" + sizeMb);
+            start = System.nanoTime();
+            assertEquals(source.length(), FileUtils.copyFile(source, channelCopy, null));
+            long channelNanos = System.nanoTime() - start;
+            assertEquals(crc, crc(channelCopy));
+            channelCopy.delete();
+            source.delete();
+
+            System.out.println(sizeMb + "MB: stream " + speed(sizeMb, streamNanos) + "MB/s, copyFile "
+                    + speed(sizeMb, channelNanos) + "MB/s");
+        }
+    }
+
+    /**
+     * 改动前的实现: 1KB缓冲区逐块读写
+     */
+    private static void streamCopy(File source, File target) throws IOException {
+        InputStream in = new FileInputStream(source);
+        OutputStream out = new FileOutputStream(target);
+        try {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static long createFile(File file, long length) throws IOException {
+        Random random = new Random(length);
+        byte[] block = new byte[MB];
+        CRC32 crc = new CRC32();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            for (long written = 0; written < length; written += block.length) {
+                random.nextBytes(block);
+                out.write(block);
+                crc.update(block);
+            }
+        } finally {
+            out.close();
+        }
+        return crc.getValue();
+    }
+
+    private static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[MB];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    private static long speed(int sizeMb, long nanos) {
+        return sizeMb * 1000000000L / Math.max(1, nanos);
+    }
+}
@@ -0,0 +1,121 @@
+package com.xuxin.utils;
+
+import com.xuxin.utils.listener.OnProgressListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * 并发计算摘要：结果与单个计算一致，总进度递增，空文件也有结束回调，取消后最多再读一块
+ */
+public class FileDigestTaskTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("digest", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    private File createFile(String name, int length) throws IOException {
+        File file = new File(dir, name);
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void digestsAndProgress() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            files.add(createFile("f" + i, (i + 1) * 700 * 1024));
+        }
+        final List<Long> progress = Collections.synchronizedList(new ArrayList<Long>());
+        FileDigestTask task = EncryptUtils.digestFiles(files, EncryptUtils.SHA256, 3, new OnProgressListener() {
+            @Override
+            public void onProgress(long current, long total) {
+                progress.add(current);
+            }
+        });
+        assertTrue(task.await());
+        for (File file : files) {
+            assertEquals(EncryptUtils.getSHA256File(file), task.getHex(file));
+        }
+        assertEquals(task.getTotalBytes(), task.getHashedBytes());
+        assertFalse(progress.isEmpty());
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) > progress.get(i - 1));
+        }
+        assertEquals(Long.valueOf(task.getTotalBytes()), progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void emptyFileReportsFinalProgress() throws Exception {
+        File file = createFile("empty", 0);
+        final List<Long> progress = new ArrayList<>();
+        EncryptUtils.digestFile(file, EncryptUtils.MD5, new OnProgressListener() {
+            @Override
+            public void onProgress(long current, long total) {
+                assertEquals(0, total);
+                progress.add(current);
+            }
+        });
+        assertEquals(Collections.singletonList(0L), progress);
+    }
+
+    @Test
+    public void cancelStopsAfterCurrentChunk() throws Exception {
+        File file = createFile("big", 16 * MB);
+        final CountDownLatch reached = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final long[] first = new long[1];
+        FileDigestTask task = EncryptUtils.digestFiles(Collections.singletonList(file), EncryptUtils.MD5, 1,
+                new OnProgressListener() {
+                    @Override
+                    public void onProgress(long current, long total) {
+                        if (reached.getCount() > 0) {
+                            first[0] = current;
+                            reached.countDown();
+                            try {
+                                resume.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    }
+                });
+        reached.await();
+        task.cancel();
+        resume.countDown();
+        assertFalse(task.await());
+        assertNull(task.getDigest(file));
+        assertTrue(task.getHashedBytes() - first[0] <= 256 * 1024);
+    }
+}
@@ -0,0 +1,89 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * 批量写入的基准：N次写入的fsync次数和耗时
+ * 改动前每次save都commit一次(N次fsync)，批量写入和合并写入窗口只需要一次
+ */
+public class MPreferBatchTest {
+
+    private static final int WRITES = 200;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("mprefer", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void commitEachWrite() throws Exception {
+        XmlFilePreferences prefs = new XmlFilePreferences(new File(dir, "commit.xml"));
+        MPrefer prefer = new MPrefer(prefs);
+        long start = System.nanoTime();
+        for (int i = 0; i < WRITES; i++) {
+            prefer.save("key" + i, i);
+        }
+        long cost = System.nanoTime() - start;
+        prefs.awaitWrites();
+        report("commit each", prefs, cost);
+        assertEquals(WRITES, prefs.getSyncCount());
+        assertEquals(WRITES - 1, prefer.readInt("key" + (WRITES - 1)));
+    }
+
+    @Test
+    public void batchApply() throws Exception {
+        XmlFilePreferences prefs = new XmlFilePreferences(new File(dir, "batch.xml"));
+        MPrefer prefer = new MPrefer(prefs);
+        long start = System.nanoTime();
+        MPrefer.Batch batch = prefer.begin();
+        for (int i = 0; i < WRITES; i++) {
+            batch.put("key" + i, i);
+        }
+        batch.apply();
+        long cost = System.nanoTime() - start;
+        assertEquals(WRITES - 1, prefer.readInt("key" + (WRITES - 1)));
+        prefs.awaitWrites();
+        report("batch apply", prefs, cost);
+        assertEquals(1, prefs.getSyncCount());
+    }
+
+    @Test
+    public void coalesceWindow() throws Exception {
+        XmlFilePreferences prefs = new XmlFilePreferences(new File(dir, "coalesce.xml"));
+        MPrefer prefer = new MPrefer(prefs);
+        prefer.setCoalesceWindow(10000);
+        long start = System.nanoTime();
+        for (int i = 0; i < WRITES; i++) {
+            prefer.save("key" + i, i);
+        }
+        long cost = System.nanoTime() - start;
+        // 窗口内未落盘的数据也能读到
+        assertEquals(WRITES - 1, prefer.readInt("key" + (WRITES - 1)));
+        assertEquals(0, prefs.getSyncCount());
+        prefer.flush();
+        prefs.awaitWrites();
+        report("coalesce", prefs, cost);
+        assertEquals(1, prefs.getSyncCount());
+        assertEquals(WRITES - 1, prefer.readInt("key" + (WRITES - 1)));
+    }
+
+    private static void report(String name, XmlFilePreferences prefs, long costNanos) {
+        System.out.println(name + ": " + WRITES + " writes, " + prefs.getSyncCount() + " fsync, "
+                + costNanos / 1000 + "us");
+    }
+}
@@ -0,0 +1,126 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * 读取快照的一致性：写入后立即能读到，flush、批量写入与并发重建快照不会读到旧值，类型不符时与SharedPreferences一样抛出异常
+ */
+public class MPreferSnapshotTest {
+
+    private static final int ROUNDS = 2000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("snapshot", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void readYourWrites() throws Exception {
+        XmlFilePreferences prefs = new XmlFilePreferences(new File(dir, "ryw.xml"));
+        final MPrefer prefer = new MPrefer(prefs);
+        prefer.setCoalesceWindow(1);
+        final AtomicBoolean stop = new AtomicBoolean();
+        // 不停读取全部数据，使快照不断重建，与写入线程的flush交错
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!stop.get()) {
+                    prefer.readAll();
+                    prefer.readInt("other");
+                }
+            }
+        });
+        reader.start();
+        try {
+            for (int i = 0; i < ROUNDS; i++) {
+                prefer.save("counter", i);
+                assertEquals(i, prefer.readInt("counter"));
+                if (i % 3 == 0) {
+                    prefer.flush();
+                } else if (i % 3 == 1) {
+                    prefer.begin().put("batch", i).apply();
+                    assertEquals(i, prefer.readInt("batch"));
+                }
+                assertEquals(i, prefer.readInt("counter"));
+            }
+        } finally {
+            stop.set(true);
+            reader.join();
+        }
+        prefer.setCoalesceWindow(0);
+        prefs.awaitWrites();
+    }
+
+    @Test
+    public void manyWritesKeepSnapshotConsistent() throws Exception {
+        XmlFilePreferences prefs = new XmlFilePreferences(new File(dir, "many.xml"));
+        MPrefer prefer = new MPrefer(prefs);
+        prefer.setCoalesceWindow(10000);
+        for (int i = 0; i < ROUNDS; i++) {
+            prefer.save("key" + i, "value" + i);
+            assertEquals("value" + i, prefer.readString("key" + i));
+        }
+        prefer.begin().remove("key0").apply();
+        assertFalse(prefer.contains("key0"));
+        assertEquals(ROUNDS - 1, prefer.readAll().size());
+        for (int i = 1; i < ROUNDS; i++) {
+            assertEquals("value" + i, prefer.readString("key" + i));
+        }
+        prefer.flush();
+        prefs.awaitWrites();
+    }
+
+    @Test
+    public void wrongTypeThrows() throws Exception {
+        XmlFilePreferences prefs = new XmlFilePreferences(new File(dir, "type.xml"));
+        MPrefer prefer = new MPrefer(prefs);
+        // 刚写入的值在changes中
+        prefer.save("number", 5);
+        assertWrongType(prefer);
+        prefer.flush();
+        // 新的MPrefer从prefs构建快照，值在表中
+        MPrefer reopened = new MPrefer(prefs);
+        assertEquals(5, reopened.readInt("number"));
+        assertWrongType(reopened);
+        reopened.begin().remove("number").apply();
+        assertEquals("none", reopened.readString("number", "none"));
+        assertEquals(-1, reopened.readInt("number"));
+        reopened.flush();
+        prefs.awaitWrites();
+    }
+
+    private static void assertWrongType(MPrefer prefer) {
+        try {
+            prefer.readString("number");
+            fail();
+        } catch (ClassCastException expected) {
+        }
+        try {
+            prefer.readLong("number");
+            fail();
+        } catch (ClassCastException expected) {
+        }
+        try {
+            prefer.readBoolean("number");
+            fail();
+        } catch (ClassCastException expected) {
+        }
+        assertEquals("none", prefer.readString("missing", "none"));
+    }
+}
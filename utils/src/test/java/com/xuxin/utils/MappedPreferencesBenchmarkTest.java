@@ -0,0 +1,105 @@
+package com.xuxin.utils;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * 内存映射存储与SharedPreferences(xml整体重写)的对比：单次写入延迟和打开(加载)耗时
+ * xml一侧使用{@link XmlFilePreferences}模拟系统实现的落盘方式
+ */
+public class MappedPreferencesBenchmarkTest {
+
+    private static final int KEYS = 1000;
+    private static final int WRITES = 200;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("mapped", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void writeLatency() throws Exception {
+        XmlFilePreferences xml = new XmlFilePreferences(new File(dir, "write.xml"));
+        fill(xml);
+        long xmlCommit = measureWrites(xml, true);
+        long xmlApply = measureWrites(xml, false);
+        xml.awaitWrites();
+
+        MappedPreferences mapped = MappedPreferences.get(new File(dir, "write.kv"));
+        try {
+            fill(mapped);
+            long mappedCommit = measureWrites(mapped, true);
+            long mappedApply = measureWrites(mapped, false);
+            System.out.println("write commit: xml " + xmlCommit + "ns, mapped " + mappedCommit + "ns");
+            System.out.println("write apply: xml " + xmlApply + "ns, mapped " + mappedApply + "ns");
+            assertEquals(WRITES - 1, mapped.getInt("write", -1));
+        } finally {
+            mapped.close();
+        }
+    }
+
+    @Test
+    public void openTime() throws Exception {
+        File xmlFile = new File(dir, "open.xml");
+        fill(new XmlFilePreferences(xmlFile));
+        File mappedFile = new File(dir, "open.kv");
+        MappedPreferences created = MappedPreferences.get(mappedFile);
+        fill(created);
+        created.close();
+
+        long start = System.nanoTime();
+        XmlFilePreferences xml = new XmlFilePreferences(xmlFile);
+        long xmlOpen = System.nanoTime() - start;
+        start = System.nanoTime();
+        MappedPreferences mapped = MappedPreferences.get(mappedFile);
+        long mappedOpen = System.nanoTime() - start;
+        try {
+            System.out.println("open " + KEYS + " keys: xml " + xmlOpen / 1000 + "us, mapped " + mappedOpen / 1000 + "us");
+            assertEquals(KEYS, xml.getAll().size());
+            assertEquals(KEYS, mapped.getAll().size());
+            assertEquals("value" + (KEYS - 1), mapped.getString("key" + (KEYS - 1), null));
+        } finally {
+            mapped.close();
+        }
+    }
+
+    private static void fill(SharedPreferences prefs) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (int i = 0; i < KEYS; i++) {
+            editor.putString("key" + i, "value" + i);
+        }
+        editor.commit();
+    }
+
+    /**
+     * @return 平均每次写入的耗时(纳秒)
+     */
+    private static long measureWrites(SharedPreferences prefs, boolean commit) {
+        long start = System.nanoTime();
+        for (int i = 0; i < WRITES; i++) {
+            SharedPreferences.Editor editor = prefs.edit().putInt("write", i);
+            if (commit) {
+                editor.commit();
+            } else {
+                editor.apply();
+            }
+        }
+        return (System.nanoTime() - start) / WRITES;
+    }
+}
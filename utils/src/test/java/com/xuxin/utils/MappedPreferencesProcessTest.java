@@ -0,0 +1,185 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多进程模式：两个JVM进程同时读写同一个文件，以及同一进程中重复打开同一个文件
+ */
+public class MappedPreferencesProcessTest {
+
+    private static final int KEYS = 300;
+    private static final long TIMEOUT = 60000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("process", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void twoProcesses() throws Exception {
+        File file = new File(dir, "shared.kv");
+        Process first = fork(file, "a", "b");
+        Process second = fork(file, "b", "a");
+        assertEquals(0, waitFor(first));
+        assertEquals(0, waitFor(second));
+
+        MappedPreferences prefs = MappedPreferences.get(file, true);
+        try {
+            for (int i = 0; i < KEYS; i++) {
+                assertEquals(i, prefs.getInt("a" + i, -1));
+                assertEquals(i, prefs.getInt("b" + i, -1));
+            }
+            assertEquals(KEYS * 2, prefs.getAll().size());
+        } finally {
+            prefs.close();
+        }
+    }
+
+    @Test
+    public void sameFileInOneProcess() throws Exception {
+        File file = new File(dir, "same.kv");
+        MappedPreferences single = MappedPreferences.get(file);
+        try {
+            single.edit().putString("key", "value").commit();
+            File alias = new File(new File(dir, "."), "same.kv");
+            MappedPreferences multi = MappedPreferences.get(alias, true);
+            assertSame(single, multi);
+            assertTrue(single.isMultiProcess());
+            assertSame(multi, MappedPreferences.get(file, false));
+            assertEquals("value", multi.getString("key", null));
+            multi.edit().putInt("count", 1).commit();
+            assertEquals(1, single.getInt("count", -1));
+        } finally {
+            single.close();
+        }
+        MappedPreferences reopened = MappedPreferences.get(file, true);
+        try {
+            assertNotSame(single, reopened);
+            assertEquals("value", reopened.getString("key", null));
+            assertEquals(1, reopened.getInt("count", -1));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void concurrentOpenAndWrite() throws Exception {
+        final File file = new File(dir, "threads.kv");
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        MappedPreferences prefs = MappedPreferences.get(file, id % 2 == 0);
+                        for (int i = 0; i < 100; i++) {
+                            assertTrue(prefs.edit().putInt("t" + id + "-" + i, i).commit());
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        MappedPreferences prefs = MappedPreferences.get(file, true);
+        try {
+            assertEquals(threads * 100, prefs.getAll().size());
+        } finally {
+            prefs.close();
+        }
+    }
+
+    private static Process fork(File file, String own, String other) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                MappedPreferencesProcessTest.class.getName(), file.getPath(), own, other);
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    private static int waitFor(Process process) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return process.waitFor();
+    }
+
+    /**
+     * 子进程入口：写入own前缀的key，并等待读到另一个进程写入的全部other前缀的key
+     *
+     * @param args 文件路径、own、other
+     */
+    public static void main(String[] args) throws Exception {
+        MappedPreferences prefs = MappedPreferences.get(new File(args[0]), true);
+        String own = args[1];
+        String other = args[2];
+        for (int i = 0; i < KEYS; i++) {
+            if (!prefs.edit().putInt(own + i, i).commit()) {
+                System.out.println(own + ": commit failed");
+                System.exit(1);
+            }
+        }
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (true) {
+            Map<String, ?> all = prefs.getAll();
+            int seen = 0;
+            for (int i = 0; i < KEYS; i++) {
+                if (Integer.valueOf(i).equals(all.get(own + i)) && Integer.valueOf(i).equals(all.get(other + i))) {
+                    seen++;
+                }
+            }
+            if (seen == KEYS) {
+                break;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                System.out.println(own + ": only " + seen + " keys visible");
+                System.exit(1);
+            }
+            Thread.sleep(10);
+        }
+        prefs.close();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,124 @@
+package com.xuxin.utils;
+
+import com.xuxin.utils.listener.OnProgressListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 断点续传复制：中断后从最后一个检查点继续，临时文件中校验失败的块重新复制，完成后替换已存在的目标
+ */
+public class ResumableCopyTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private File dir;
+    private File source;
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("resume", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        source = new File(dir, "source");
+        target = new File(dir, "target");
+        byte[] bytes = new byte[40 * MB + 123];
+        new Random(1).nextBytes(bytes);
+        FileOutputStream out = new FileOutputStream(source);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    /**
+     * 复制到20MB时中断，第一个检查点(16MB)已写入日志
+     */
+    private void interrupt() throws IOException {
+        try {
+            FileUtils.copyFileResumable(source, target, new OnProgressListener() {
+                @Override
+                public void onProgress(long current, long total) {
+                    if (current >= 20 * MB) {
+                        throw new CancellationException();
+                    }
+                }
+            });
+            fail();
+        } catch (CancellationException expected) {
+        }
+        assertFalse(target.exists());
+        assertTrue(ResumableCopier.partFile(target).exists());
+        assertTrue(ResumableCopier.journalFile(target).exists());
+    }
+
+    private void assertCopied() {
+        assertEquals(EncryptUtils.getMD5File(source), EncryptUtils.getMD5File(target));
+        assertFalse(ResumableCopier.partFile(target).exists());
+        assertFalse(ResumableCopier.journalFile(target).exists());
+    }
+
+    @Test
+    public void resumeAfterInterruption() throws Exception {
+        interrupt();
+        final long[] first = {-1};
+        long copied = FileUtils.copyFileResumable(source, target, new OnProgressListener() {
+            @Override
+            public void onProgress(long current, long total) {
+                if (first[0] < 0) {
+                    first[0] = current;
+                }
+            }
+        });
+        assertEquals(16 * MB, first[0]);
+        assertEquals(source.length() - 16 * MB, copied);
+        assertCopied();
+    }
+
+    @Test
+    public void corruptBlockIsCopiedAgain() throws Exception {
+        interrupt();
+        // 破坏检查点内的最后一块，应从它开始重新复制
+        RandomAccessFile part = new RandomAccessFile(ResumableCopier.partFile(target), "rw");
+        try {
+            part.seek(15L * MB + 100);
+            int value = part.read();
+            part.seek(15L * MB + 100);
+            part.write(value ^ 0xFF);
+        } finally {
+            part.close();
+        }
+        long copied = FileUtils.copyFileResumable(source, target, null);
+        assertEquals(source.length() - 15 * MB, copied);
+        assertCopied();
+    }
+
+    @Test
+    public void replacesExistingTarget() throws Exception {
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            out.write(new byte[10]);
+        } finally {
+            out.close();
+        }
+        assertEquals(source.length(), FileUtils.copyFileResumable(source, target, null));
+        assertCopied();
+    }
+}
@@ -0,0 +1,117 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * 参数化日志的分配：用当前线程分配的字节数统计，全局关闭或按TAG关闭时所有重载都不应分配，
+ * 打开时基本类型的重载只分配日志字符串本身
+ */
+public class XLogAllocationTest {
+
+    private static final int CALLS = 10000;
+
+    private com.sun.management.ThreadMXBean threadBean;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        XLog.openLog();
+        XLog.clearTagConfigs();
+    }
+
+    @Test
+    public void closedLogDoesNotAllocate() {
+        XLog.closeLog();
+        // 预热，排除类加载和第一次调用的分配
+        logAll(CALLS);
+        long bytes = allocatedBytes(CALLS);
+        System.out.println("closed: " + bytes + " bytes for " + CALLS + " rounds");
+        assertTrue("allocated " + bytes + " bytes", bytes < 1024);
+    }
+
+    @Test
+    public void tagOffDoesNotAllocate() {
+        XLog.setTagLevel("Alloc", XLog.TAG_OFF);
+        logAll(CALLS);
+        long bytes = allocatedBytes(CALLS);
+        System.out.println("tag off: " + bytes + " bytes for " + CALLS + " rounds");
+        assertTrue("allocated " + bytes + " bytes", bytes < 1024);
+    }
+
+    @Test
+    public void enabledPrimitivesAreNotBoxed() {
+        // 打开时只应分配生成的日志字符串，与直接用StringBuilder拼出相同字符串的分配比较
+        logPrimitives(CALLS);
+        buildStrings(CALLS);
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        logPrimitives(CALLS);
+        long logBytes = threadBean.getThreadAllocatedBytes(threadId) - before;
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        buildStrings(CALLS);
+        long stringBytes = threadBean.getThreadAllocatedBytes(threadId) - before;
+        System.out.println("enabled: " + logBytes + " bytes, strings only: " + stringBytes + " bytes");
+        // 装箱和参数数组每次调用至少多分配40字节
+        assertTrue("allocated " + logBytes + " bytes", logBytes < stringBytes + CALLS * 8L);
+    }
+
+    private static void logPrimitives(int rounds) {
+        for (int i = 0; i < rounds; i++) {
+            long big = 1000000L + i;
+            XLog.i("Alloc", "a={}", big);
+            XLog.i("Alloc", "a={} b={}", big, big);
+        }
+    }
+
+    private static void buildStrings(int rounds) {
+        StringBuilder sb = new StringBuilder(256);
+        for (int i = 0; i < rounds; i++) {
+            long big = 1000000L + i;
+            sb.setLength(0);
+            consume(sb.append("a=").append(big).toString());
+            sb.setLength(0);
+            consume(sb.append("a=").append(big).append(" b=").append(big).toString());
+        }
+    }
+
+    private static volatile String sink;
+
+    private static void consume(String value) {
+        sink = value;
+    }
+
+    private long allocatedBytes(int rounds) {
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        logAll(rounds);
+        return threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static void logAll(int rounds) {
+        Object value = "value";
+        for (int i = 0; i < rounds; i++) {
+            long big = 1000000L + i;
+            XLog.v("Alloc", "a={}", value);
+            XLog.d("Alloc", "a={} b={}", value, value);
+            XLog.i("Alloc", "a={}", big);
+            XLog.w("Alloc", "a={}", 1.5f + i);
+            XLog.e("Alloc", "a={}", 2.5 + i);
+            XLog.d("Alloc", "a={}", i % 2 == 0);
+            XLog.i("Alloc", "a={} b={}", big, big);
+        }
+    }
+}
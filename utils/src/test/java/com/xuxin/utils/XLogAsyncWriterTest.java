@@ -0,0 +1,98 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 异步模式缓冲区满时的FULL_BLOCK策略：写入线程等待而不丢弃，写线程自己打印的日志丢弃而不等待
+ */
+public class XLogAsyncWriterTest {
+
+    private final AtomicInteger written = new AtomicInteger();
+    private final XLogSink sink = new XLogSink() {
+        @Override
+        public void write(XLogEvent event) {
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+
+    private final AtomicInteger outer = new AtomicInteger();
+    /**
+     * 每输出一条Outer日志就在写线程中再打印几条
+     */
+    private final XLogSink reentrantSink = new XLogSink() {
+        @Override
+        public void write(XLogEvent event) {
+            if ("Outer".equals(event.tag)) {
+                for (int i = 0; i < 10; i++) {
+                    XLog.i("Inner", "line");
+                }
+                outer.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+
+    @After
+    public void tearDown() {
+        XLog.stopAsync();
+        XLog.removeSink(sink);
+        XLog.removeSink(reentrantSink);
+    }
+
+    @Test
+    public void fullBlockKeepsEveryLine() throws Exception {
+        final int threads = 4;
+        final int lines = 5000;
+        XLog.addSink(sink);
+        XLog.startAsync(4, XLog.FULL_BLOCK);
+        List<Thread> writers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < lines; i++) {
+                        XLog.i("Block", "line");
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        XLog.stopAsync();
+        System.out.println("full block: " + threads * lines + " lines, " + (System.nanoTime() - start) / 1000 + "us");
+        assertEquals(threads * lines, written.get());
+    }
+
+    @Test(timeout = 10000)
+    public void writerThreadDoesNotBlockOnItself() throws Exception {
+        XLog.addSink(reentrantSink);
+        XLog.startAsync(4, XLog.FULL_BLOCK);
+        for (int i = 0; i < 5; i++) {
+            XLog.i("Outer", "line");
+        }
+        // 写线程等待自己时缓冲区不再腾出空位，上面的XLog.i也会一直等待，由timeout判定失败
+        long deadline = System.currentTimeMillis() + 5000;
+        while (outer.get() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, outer.get());
+    }
+}
@@ -0,0 +1,117 @@
+package com.xuxin.utils;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 二进制日志与文本日志的对比：每条日志占用的字节数和编码速度(条/秒)
+ * 直接调用sink.write，不经过XLog的格式化和分发，只比较编码和写文件
+ */
+public class XLogBinarySinkBenchmarkTest {
+
+    private static final int RECORDS = 200000;
+    private static final String[] TAGS = {"Network", "Database", "UI", "Player"};
+    private static final String[] FORMATS = {
+            "request {} finished with code {} in {}ms",
+            "query {} returned {} rows",
+            "onClick view={} position={}",
+            "buffering {}%"};
+
+    private File dir;
+    private XLogEvent[] events;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("xlbbench", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        events = new XLogEvent[1000];
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < events.length; i++) {
+            String format = FORMATS[i % FORMATS.length];
+            String text = format.replaceFirst("\\{}", "https://example.com/api/item/" + i)
+                    .replaceFirst("\\{}", String.valueOf(200 + i % 3))
+                    .replaceFirst("\\{}", String.valueOf(i % 97));
+            XLogEvent event = new XLogEvent();
+            event.set(time + i * 3, Log.INFO, TAGS[i % TAGS.length], format, text, null);
+            event.text = text;
+            events[i] = event;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void bytesAndThroughput() throws Exception {
+        // 预热
+        runText("warmup-text");
+        runBinary("warmup-binary");
+
+        long textNanos = runText("text");
+        long binaryNanos = runBinary("binary");
+        long textBytes = new File(dir, "text.log").length();
+        long binaryBytes = new File(dir, "binary.xlb").length();
+        System.out.println("text: " + textBytes / RECORDS + " bytes/record, " + rate(textNanos) + " records/s");
+        System.out.println("binary: " + binaryBytes / RECORDS + " bytes/record, " + rate(binaryNanos) + " records/s");
+        assertTrue(binaryBytes < textBytes);
+
+        InputStream in = new FileInputStream(new File(dir, "binary.xlb"));
+        try {
+            assertEquals(RECORDS, new XLogBinaryDecoder(in).decode(new NullWriter()));
+        } finally {
+            in.close();
+        }
+    }
+
+    private long runText(String name) throws Exception {
+        XLogFileSink sink = new XLogFileSink(dir, name, 256 * 1024, Long.MAX_VALUE, 2, false);
+        long start = System.nanoTime();
+        for (int i = 0; i < RECORDS; i++) {
+            sink.write(events[i % events.length]);
+        }
+        sink.close();
+        return System.nanoTime() - start;
+    }
+
+    private long runBinary(String name) throws Exception {
+        XLogBinarySink sink = new XLogBinarySink(dir, name, Long.MAX_VALUE, 2);
+        long start = System.nanoTime();
+        for (int i = 0; i < RECORDS; i++) {
+            sink.write(events[i % events.length]);
+        }
+        sink.close();
+        return System.nanoTime() - start;
+    }
+
+    private static long rate(long nanos) {
+        return RECORDS * 1000000000L / Math.max(1, nanos);
+    }
+
+    private static final class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] chars, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.xuxin.utils;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 二进制日志：解码结果与{@link XLogFileSink}写的文本完全相同，同一毫秒内多次滚动不会互相覆盖
+ */
+public class XLogBinarySinkTest {
+
+    private File dir;
+    private XLogBinarySink sink;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("xlb", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        if (sink != null) {
+            XLog.removeSink(sink);
+            sink.close();
+        }
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void rollsInSameMillisecondKeepEveryFile() throws Exception {
+        int lines = 50;
+        // 每条日志都超过大小上限，每次写入都会滚动
+        sink = new XLogBinarySink(dir, "app", 1, 1000);
+        XLog.addSink(sink);
+        for (int i = 0; i < lines; i++) {
+            XLog.i("Roll", "line {}", i);
+        }
+        String[] rolled = dir.list();
+        assertNotNull(rolled);
+        int count = 0;
+        for (String name : rolled) {
+            if (name.startsWith("app-") && name.endsWith(".xlb")) {
+                count++;
+            }
+        }
+        assertEquals(lines, count);
+    }
+
+    @Test
+    public void decodeMatchesTextSink() throws Exception {
+        sink = new XLogBinarySink(dir, "round");
+        XLogFileSink text = new XLogFileSink(dir, "round", 64 * 1024, 64 * 1024 * 1024, 2, false);
+        long time = 1500000000000L;
+        Object[][] events = {
+                // 级别, TAG, 格式, 文本
+                {Log.INFO, "Net", "url={} code={}", "url=https://a.b/c?d={} code=200"},
+                {Log.DEBUG, "Net", "url={} code={}", "url= code="},
+                {Log.WARN, "数据库", "耗时{}ms，行数{}", "耗时12ms，行数3"},
+                {Log.ERROR, "Net", null, "plain text without format"},
+                {Log.VERBOSE, "Net", "no placeholder", "no placeholder"},
+                {Log.INFO, "Ui", "{}{}", "ab"},
+                {Log.INFO, "Ui", "a={}", "b=1"},
+                {Log.ASSERT, "Ui", "multi\nline {}", "multi\nline 😀"},
+        };
+        for (int i = 0; i < events.length; i++) {
+            XLogEvent event = new XLogEvent();
+            // 时间先后乱序，检查时间差的zigzag编码
+            long eventTime = time + (i % 2 == 0 ? i * 1234L : -i * 7L);
+            event.set(eventTime, (Integer) events[i][0], (String) events[i][1], (String) events[i][2],
+                    (String) events[i][3], null);
+            event.text = (String) events[i][3];
+            sink.write(event);
+            text.write(event);
+        }
+        sink.close();
+        text.close();
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(decoded, "UTF-8");
+        InputStream in = new FileInputStream(new File(dir, "round.xlb"));
+        try {
+            assertEquals(events.length, new XLogBinaryDecoder(in).decode(writer));
+        } finally {
+            in.close();
+        }
+        writer.flush();
+        InputStream expected = new FileInputStream(new File(dir, "round.log"));
+        assertEquals(new String(ZipUtilsTest.readAll(expected), "UTF-8"), decoded.toString("UTF-8"));
+    }
+}
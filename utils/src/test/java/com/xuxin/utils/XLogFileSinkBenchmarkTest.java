@@ -0,0 +1,129 @@
+package com.xuxin.utils;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 日志吞吐(行/秒)和单次调用延迟：直接调用Log、每行直接写文件、XLog同步写文件、XLog异步写文件
+ * JVM单元测试中Log是空实现，它的数字只代表调用本身的开销，与logcat的对比需要在设备上运行
+ */
+public class XLogFileSinkBenchmarkTest {
+
+    private static final int LINES = 100000;
+    private static final String MESSAGE = "benchmark line with some payload 0123456789";
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("xlog", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        XLog.stopAsync();
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void plainLog() {
+        long[] latencies = new long[LINES];
+        long start = System.nanoTime();
+        for (int i = 0; i < LINES; i++) {
+            long begin = System.nanoTime();
+            Log.i("Bench", MESSAGE);
+            latencies[i] = System.nanoTime() - begin;
+        }
+        report("plain Log", System.nanoTime() - start, latencies);
+    }
+
+    @Test
+    public void plainFileWrite() throws Exception {
+        FileOutputStream out = new FileOutputStream(new File(dir, "plain.log"), true);
+        long[] latencies = new long[LINES];
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < LINES; i++) {
+                long begin = System.nanoTime();
+                out.write(("I/Bench: " + MESSAGE + '\n').getBytes("UTF-8"));
+                latencies[i] = System.nanoTime() - begin;
+            }
+        } finally {
+            out.close();
+        }
+        report("plain file", System.nanoTime() - start, latencies);
+    }
+
+    @Test
+    public void syncFileSink() throws Exception {
+        runSink("xlog sync", false);
+    }
+
+    @Test
+    public void asyncFileSink() throws Exception {
+        runSink("xlog async", true);
+    }
+
+    private void runSink(String name, boolean async) throws Exception {
+        XLogFileSink sink = new XLogFileSink(dir, name.replace(' ', '-'), 256 * 1024, 64 * 1024 * 1024, 2, false);
+        XLog.addSink(sink);
+        if (async) {
+            XLog.startAsync(8192, XLog.FULL_BLOCK);
+        }
+        long[] latencies = new long[LINES];
+        long start;
+        try {
+            start = System.nanoTime();
+            for (int i = 0; i < LINES; i++) {
+                long begin = System.nanoTime();
+                XLog.i("Bench", MESSAGE);
+                latencies[i] = System.nanoTime() - begin;
+            }
+            XLog.stopAsync();
+            XLog.flush();
+        } finally {
+            XLog.removeSink(sink);
+            sink.close();
+        }
+        report(name, System.nanoTime() - start, latencies);
+        assertEquals(LINES, countLines(new File(dir, name.replace(' ', '-') + ".log")));
+    }
+
+    private static int countLines(File file) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            int count = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.endsWith(MESSAGE)) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void report(String name, long totalNanos, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.println(name + ": " + LINES * 1000000000L / Math.max(1, totalNanos) + " lines/s"
+                + ", p50 " + latencies[latencies.length / 2] + "ns"
+                + ", p99 " + latencies[latencies.length * 99 / 100] + "ns"
+                + ", max " + latencies[latencies.length - 1] + "ns");
+    }
+}
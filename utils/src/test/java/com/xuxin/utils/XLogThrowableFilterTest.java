@@ -0,0 +1,71 @@
+package com.xuxin.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 异常去重：窗口内重复的异常只返回简短说明，窗口过后重新打印，指纹表按LRU淘汰
+ */
+public class XLogThrowableFilterTest {
+
+    /**
+     * 调用栈(包括测试方法中的行号)相同才是同一个指纹，所以同一位置的异常都从这里的同一行创建
+     */
+    private static Exception[] create(int count) {
+        Exception[] exceptions = new Exception[count];
+        for (int i = 0; i < count; i++) {
+            exceptions[i] = new IllegalStateException("message " + i);
+        }
+        return exceptions;
+    }
+
+    private static Exception other() {
+        return new IllegalStateException("other");
+    }
+
+    @Test
+    public void repeatsAreSuppressedWithinWindow() {
+        XLogThrowableFilter filter = new XLogThrowableFilter(60 * 1000, 16);
+        Exception[] same = create(3);
+        // message不同不影响指纹
+        assertNull(filter.filter(same[0]));
+        String repeated = filter.filter(same[1]);
+        assertNotNull(repeated);
+        assertTrue(repeated, repeated.contains("repeated 1 times"));
+        assertTrue(repeated, repeated.startsWith("java.lang.IllegalStateException: message 1"));
+        assertTrue(filter.filter(same[2]).contains("repeated 2 times"));
+        // 不同位置的异常不受影响
+        assertNull(filter.filter(other()));
+    }
+
+    @Test
+    public void reEmittedAfterWindow() throws Exception {
+        XLogThrowableFilter filter = new XLogThrowableFilter(50, 16);
+        Exception tr = other();
+        assertNull(filter.filter(tr));
+        assertNotNull(filter.filter(tr));
+        Thread.sleep(100);
+        assertNull(filter.filter(tr));
+        // 新窗口重新计数
+        assertTrue(filter.filter(tr).contains("repeated 1 times"));
+    }
+
+    @Test
+    public void fingerprintsAreEvictedLeastRecentlyUsedFirst() {
+        XLogThrowableFilter filter = new XLogThrowableFilter(60 * 1000, 2);
+        Exception a = create(1)[0];
+        Exception b = other();
+        Exception c = new IllegalArgumentException("c");
+        assertNull(filter.filter(a));
+        assertNull(filter.filter(b));
+        // 访问a之后b成为最久未使用的，加入c时淘汰b
+        assertNotNull(filter.filter(a));
+        assertNull(filter.filter(c));
+        assertNotNull(filter.filter(a));
+        assertNull(filter.filter(b));
+        // 重新加入b时淘汰了c
+        assertNotNull(filter.filter(a));
+        assertNull(filter.filter(c));
+    }
+}
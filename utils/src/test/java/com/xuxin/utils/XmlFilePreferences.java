@@ -0,0 +1,283 @@
+package com.xuxin.utils;
+
+import android.content.SharedPreferences;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 测试用的SharedPreferences，按系统SharedPreferencesImpl的方式落盘：
+ * 每次commit/apply都把全部数据重写为xml并fsync，commit在调用线程写，apply在单个后台线程写
+ * 构造时同步读取并解析整个文件，与系统实现第一次读取时等待xml解析一样
+ * JVM单元测试中没有系统实现，用它统计fsync次数和耗时；只支持基本类型和String，值中不能有需要转义的字符
+ */
+class XmlFilePreferences implements SharedPreferences {
+
+    private static final Pattern ENTRY = Pattern.compile("<(\\w+) name=\"([^\"]*)\" value=\"([^\"]*)\" />");
+
+    private final File file;
+    private final Map<String, Object> values = new HashMap<>();
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger syncCount = new AtomicInteger();
+
+    XmlFilePreferences(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            load();
+        }
+    }
+
+    private void load() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = ENTRY.matcher(line);
+                if (!matcher.find()) {
+                    continue;
+                }
+                String type = matcher.group(1);
+                String value = matcher.group(3);
+                Object parsed;
+                if ("boolean".equals(type)) {
+                    parsed = Boolean.valueOf(value);
+                } else if ("int".equals(type)) {
+                    parsed = Integer.valueOf(value);
+                } else if ("long".equals(type)) {
+                    parsed = Long.valueOf(value);
+                } else if ("float".equals(type)) {
+                    parsed = Float.valueOf(value);
+                } else {
+                    parsed = value;
+                }
+                values.put(matcher.group(2), parsed);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String typeOf(Object value) {
+        if (value instanceof Boolean) {
+            return "boolean";
+        } else if (value instanceof Integer) {
+            return "int";
+        } else if (value instanceof Long) {
+            return "long";
+        } else if (value instanceof Float) {
+            return "float";
+        }
+        return "string";
+    }
+
+    /**
+     * @return fsync的次数
+     */
+    int getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * 等待apply提交的写入全部完成
+     */
+    void awaitWrites() throws InterruptedException {
+        diskExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        diskExecutor.shutdown();
+        diskExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private void writeToDisk(Map<String, Object> data) {
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                Writer writer = new OutputStreamWriter(out, "UTF-8");
+                writer.write("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+                for (Map.Entry<String, Object> entry : data.entrySet()) {
+                    writer.write("    <" + typeOf(entry.getValue()) + " name=\"" + entry.getKey()
+                            + "\" value=\"" + entry.getValue() + "\" />\n");
+                }
+                writer.write("</map>\n");
+                writer.flush();
+                out.getFD().sync();
+                syncCount.incrementAndGet();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<>(values);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+        Object value = values.get(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(String key, Set<String> defValues) {
+        Object value = values.get(key);
+        return value != null ? (Set<String>) value : defValues;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        Object value = values.get(key);
+        return value != null ? (Integer) value : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        Object value = values.get(key);
+        return value != null ? (Long) value : defValue;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defValue) {
+        Object value = values.get(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        Object value = values.get(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new EditorImpl();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+    }
+
+    private final class EditorImpl implements Editor {
+
+        private final Map<String, Object> modified = new HashMap<>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(String key, String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            return put(key, values == null ? null : new HashSet<>(values));
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public synchronized Editor remove(String key) {
+            modified.put(key, this);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        private synchronized Editor put(String key, Object value) {
+            modified.put(key, value == null ? this : value);
+            return this;
+        }
+
+        /**
+         * 把修改合并到内存，返回需要写入的全量数据
+         */
+        private Map<String, Object> commitToMemory() {
+            synchronized (XmlFilePreferences.this) {
+                synchronized (this) {
+                    if (clear) {
+                        values.clear();
+                        clear = false;
+                    }
+                    for (Map.Entry<String, Object> entry : modified.entrySet()) {
+                        if (entry.getValue() == this) {
+                            values.remove(entry.getKey());
+                        } else {
+                            values.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    modified.clear();
+                }
+                return new HashMap<>(values);
+            }
+        }
+
+        @Override
+        public boolean commit() {
+            writeToDisk(commitToMemory());
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            final Map<String, Object> data = commitToMemory();
+            diskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeToDisk(data);
+                }
+            });
+        }
+    }
+}
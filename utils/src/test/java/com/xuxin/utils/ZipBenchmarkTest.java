@@ -0,0 +1,88 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多线程压缩的基准：1个线程和所有核的速度，以及与{@link ZipUtils#zip(File, java.io.OutputStream,
+ * com.xuxin.utils.listener.OnProgressListener)}单线程流式压缩的对比
+ * 测试数据是64个1MB的可压缩文件
+ */
+public class ZipBenchmarkTest {
+
+    private static final int MB = 1024 * 1024;
+    private static final int FILES = 64;
+
+    private File dir;
+    private File source;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("zipbench", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        source = new File(dir, "source");
+        assertTrue(source.mkdirs());
+        Random random = new Random(1);
+        byte[] block = new byte[MB];
+        for (int i = 0; i < FILES; i++) {
+            // 只用16个字母，deflate能压缩一半左右，有一定的计算量
+            for (int j = 0; j < block.length; j++) {
+                block[j] = (byte) ('a' + random.nextInt(16));
+            }
+            FileOutputStream out = new FileOutputStream(new File(source, "f" + i + ".txt"));
+            try {
+                out.write(block);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    @Test
+    public void zipThreads() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        File stream = new File(dir, "stream.zip");
+        long start = System.nanoTime();
+        FileOutputStream out = new FileOutputStream(stream);
+        ZipUtils.zip(source, out, null);
+        long streamNanos = System.nanoTime() - start;
+
+        for (int threads = 1; ; threads = Math.min(cores, threads * 2)) {
+            File zipFile = new File(dir, "threads-" + threads + ".zip");
+            start = System.nanoTime();
+            ZipStats stats = ZipUtils.zip(source, zipFile, threads, Deflater.DEFAULT_COMPRESSION, null, null);
+            long nanos = System.nanoTime() - start;
+            assertEquals(FILES, stats.getEntries());
+            assertTrue(stats.getCompressedBytes() < (long) FILES * MB);
+            File check = new File(dir, "check-" + threads);
+            ZipUtils.unzip(zipFile, check, cores, null);
+            ZipUtilsTest.assertSameFiles(source, new File(check, source.getName()));
+            FileUtils.delete(check);
+            zipFile.delete();
+            System.out.println(threads + " threads: " + speed(nanos) + "MB/s (stream " + speed(streamNanos)
+                    + "MB/s, " + cores + " cores)");
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    private static long speed(long nanos) {
+        return (long) FILES * 1000000000L / Math.max(1, nanos);
+    }
+}
@@ -0,0 +1,93 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ClosedByInterruptException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 共享读取器的替换：正在读取的流不受影响，FileChannel被中断关闭后重新打开
+ */
+public class ZipReaderTest {
+
+    private File dir;
+    private File zipFile;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("reader", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        zipFile = new File(dir, "a.zip");
+        writeZip("first", 200 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        ZipReader.closeAll();
+        FileUtils.delete(dir);
+    }
+
+    private void writeZip(String content, int repeat) throws IOException {
+        ZipStreamWriter zip = new ZipStreamWriter(new FileOutputStream(zipFile));
+        try {
+            zip.putNextEntry("a.txt", System.currentTimeMillis());
+            for (int i = 0; i < repeat; i++) {
+                zip.write(content.getBytes("UTF-8"));
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void replacedReaderClosesAfterLastStream() throws Exception {
+        ZipReader old = ZipReader.get(zipFile);
+        InputStream in = old.getInputStream("a.txt");
+        byte[] buffer = new byte[5];
+        assertEquals(5, in.read(buffer));
+        assertEquals("first", new String(buffer, "UTF-8"));
+
+        writeZip("second", 10);
+        assertTrue(zipFile.setLastModified(System.currentTimeMillis() + 10000));
+        ZipReader current = ZipReader.get(zipFile);
+        assertNotSame(old, current);
+        assertEquals(6 * 10, current.getBytes("a.txt").length);
+
+        // 旧的流继续读完，关闭后旧读取器才关闭
+        assertFalse(old.isClosed());
+        long total = 5;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        assertEquals(5 * 200 * 1024, total);
+        in.close();
+        assertTrue(old.isClosed());
+        assertFalse(current.isClosed());
+    }
+
+    @Test
+    public void reopenAfterInterrupt() throws Exception {
+        ZipReader reader = ZipReader.get(zipFile);
+        Thread.currentThread().interrupt();
+        try {
+            reader.getBytes("a.txt");
+            fail();
+        } catch (ClosedByInterruptException expected) {
+        } finally {
+            Thread.interrupted();
+        }
+        ZipReader reopened = ZipReader.get(zipFile);
+        assertNotSame(reader, reopened);
+        assertEquals(5 * 200 * 1024, reopened.getBytes("a.txt").length);
+        assertTrue(reader.isClosed());
+    }
+}
@@ -0,0 +1,135 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * 流式压缩：带数据描述符的条目和直接存储的文件都能被ZipInputStream和ZipFile读取，计数与实际输出一致
+ */
+public class ZipStreamWriterTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("stream", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    private File createFile(String name, byte[] bytes) throws IOException {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void streamEntriesAndFiles() throws Exception {
+        Random random = new Random(1);
+        byte[] json = "{\"a\":1,\"b\":[1,2,3]}".getBytes("UTF-8");
+        byte[] text = new byte[300 * 1024];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + random.nextInt(4));
+        }
+        byte[] image = new byte[100 * 1024];
+        random.nextBytes(image);
+        Map<String, byte[]> expected = new HashMap<>();
+        expected.put("c.json", json);
+        expected.put("a/b.txt", text);
+        expected.put("a/c.jpg", image);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipStreamWriter zip = new ZipStreamWriter(bytes);
+        zip.putNextEntry("c.json", System.currentTimeMillis());
+        zip.write(json);
+        zip.putDirectory("a/", System.currentTimeMillis());
+        zip.putFile(createFile("b.txt", text), "a/b.txt");
+        zip.putFile(createFile("c.jpg", image), "a/c.jpg");
+        zip.finish();
+        zip.flush();
+        assertEquals(3, zip.getEntries());
+        assertEquals(json.length + text.length + image.length, zip.getBytesIn());
+        assertEquals(bytes.size(), zip.getBytesOut());
+        zip.close();
+
+        // ZipInputStream按顺序读取，依赖数据描述符
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        int files = 0;
+        ZipEntry entry;
+        while ((entry = in.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                assertEquals("a/", entry.getName());
+                continue;
+            }
+            assertArrayEquals(entry.getName(), expected.get(entry.getName()), readEntry(in));
+            files++;
+        }
+        in.close();
+        assertEquals(3, files);
+
+        // ZipFile通过中央目录读取
+        File zipFile = createFile("out.zip", bytes.toByteArray());
+        ZipFile file = new ZipFile(zipFile);
+        try {
+            assertEquals(ZipEntry.STORED, file.getEntry("a/c.jpg").getMethod());
+            assertEquals(ZipEntry.DEFLATED, file.getEntry("a/b.txt").getMethod());
+            for (Map.Entry<String, byte[]> item : expected.entrySet()) {
+                ZipEntry zipEntry = file.getEntry(item.getKey());
+                assertArrayEquals(item.getKey(), item.getValue(), ZipUtilsTest.readAll(file.getInputStream(zipEntry)));
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void zipFolderToStream() throws Exception {
+        File source = new File(dir, "source");
+        assertTrue(new File(source, "sub").mkdirs());
+        createFile("source/a.txt", "hello".getBytes("UTF-8"));
+        createFile("source/sub/b.png", new byte[1000]);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipStats stats = ZipUtils.zip(source, bytes, null);
+        assertEquals(2, stats.getEntries());
+        assertEquals(1005, stats.getUncompressedBytes());
+        File zipFile = createFile("folder.zip", bytes.toByteArray());
+        File out = new File(dir, "out");
+        ZipUtils.unzip(zipFile, out, 1, null);
+        ZipUtilsTest.assertSameFiles(source, new File(out, "source"));
+    }
+
+    private static byte[] readEntry(ZipInputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
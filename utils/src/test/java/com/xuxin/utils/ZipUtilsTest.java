@@ -0,0 +1,245 @@
+package com.xuxin.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多线程压缩、增量更新和解压：内容与原文件一致，增量更新只重新压缩变化的文件
+ */
+public class ZipUtilsTest {
+
+    private File dir;
+    private File source;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("zip", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        source = new File(dir, "source");
+        Random random = new Random(1);
+        assertTrue(new File(source, "many").mkdirs());
+        for (int i = 0; i < 6; i++) {
+            File file = new File(source, "d" + (i % 2) + "/f" + i + ".bin");
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            byte[] bytes = new byte[1000 * (i + 1)];
+            random.nextBytes(bytes);
+            write(file, bytes);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.delete(dir);
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void unzipWithoutExtraThreads() throws Exception {
+        File zipFile = new File(dir, "a.zip");
+        ZipUtils.zip(source, zipFile, 2, null);
+        for (int threads = -1; threads <= 1; threads++) {
+            File out = new File(dir, "out" + threads);
+            ZipStats stats = ZipUtils.unzip(zipFile, out, threads, null);
+            assertEquals(6, stats.getEntries());
+            assertSameFiles(source, new File(out, source.getName()));
+        }
+    }
+
+    @Test
+    public void zipMoreItemsThanLookAhead() throws Exception {
+        Random random = new Random(2);
+        for (int i = 0; i < 60; i++) {
+            byte[] bytes = new byte[random.nextInt(400 * 1024)];
+            random.nextBytes(bytes);
+            write(new File(source, "many/" + i + ".bin"), bytes);
+        }
+        File zipFile = new File(dir, "many.zip");
+        ZipStats stats = ZipUtils.zip(source, zipFile, 3, null);
+        assertEquals(66, stats.getEntries());
+        File out = new File(dir, "many");
+        ZipUtils.unzip(zipFile, out, 3, null);
+        assertSameFiles(source, new File(out, source.getName()));
+    }
+
+    @Test
+    public void unwritableTargetLeavesNoThreads() throws Exception {
+        int before = poolThreads();
+        try {
+            ZipUtils.zip(source, new File(dir, "missing/a.zip"), 3, null);
+            fail();
+        } catch (FileNotFoundException expected) {
+        }
+        assertEquals(before, poolThreads());
+        assertFalse(new File(dir, "missing").exists());
+        assertEquals(0, dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File directory, String name) {
+                return name.endsWith(".tmp");
+            }
+        }).length);
+    }
+
+    private static int poolThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("pool-") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void updateReusesUnchangedEntries() throws Exception {
+        File zipFile = new File(dir, "u.zip");
+        ZipUtils.zip(source, zipFile, 2, null);
+        ZipStats stats = ZipUtils.update(source, zipFile, 2, null);
+        assertEquals(6, stats.getEntries());
+        assertEquals(6, stats.getReusedEntries());
+        assertZipMatches(zipFile);
+        assertFalse(new File(dir, "u.zip.tmp").exists());
+    }
+
+    @Test
+    public void updateChangedFile() throws Exception {
+        File zipFile = new File(dir, "u.zip");
+        ZipUtils.zip(source, zipFile, 2, null);
+        // 大小不变，内容和修改时间变化
+        File changed = new File(source, "d1/f3.bin");
+        byte[] bytes = new byte[(int) changed.length()];
+        new Random(3).nextBytes(bytes);
+        write(changed, bytes);
+        assertTrue(changed.setLastModified(changed.lastModified() + 10000));
+        ZipStats stats = ZipUtils.update(source, zipFile, 2, null);
+        assertEquals(6, stats.getEntries());
+        assertEquals(5, stats.getReusedEntries());
+        assertZipMatches(zipFile);
+    }
+
+    @Test
+    public void updateTouchedFileIsReusedByCrc() throws Exception {
+        File zipFile = new File(dir, "u.zip");
+        ZipUtils.zip(source, zipFile, 2, null);
+        File touched = new File(source, "d0/f2.bin");
+        assertTrue(touched.setLastModified(touched.lastModified() + 10000));
+        ZipStats stats = ZipUtils.update(source, zipFile, 2, null);
+        assertEquals(6, stats.getReusedEntries());
+        assertZipMatches(zipFile);
+    }
+
+    @Test
+    public void updateAddedAndRemovedFiles() throws Exception {
+        File zipFile = new File(dir, "u.zip");
+        ZipUtils.zip(source, zipFile, 2, null);
+        write(new File(source, "d0/new.txt"), "added".getBytes("UTF-8"));
+        assertTrue(new File(source, "d1/f1.bin").delete());
+        ZipStats stats = ZipUtils.update(source, zipFile, 2, null);
+        assertEquals(6, stats.getEntries());
+        assertEquals(5, stats.getReusedEntries());
+        assertZipMatches(zipFile);
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            assertNull(zip.getEntry(source.getName() + "/d1/f1.bin"));
+            assertNotNull(zip.getEntry(source.getName() + "/d0/new.txt"));
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * 用java.util.zip.ZipFile读取，条目与源文件夹中的文件一一对应且内容相同
+     */
+    private void assertZipMatches(File zipFile) throws IOException {
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            Set<String> names = new HashSet<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    names.add(entry.getName());
+                }
+            }
+            Set<String> expected = new HashSet<>();
+            collect(source, source.getName(), expected);
+            assertEquals(expected, names);
+            for (String name : names) {
+                File file = new File(dir, name);
+                assertArrayEquals(name, readFile(file), readEntry(zip, zip.getEntry(name)));
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static void collect(File file, String name, Set<String> names) {
+        if (file.isFile()) {
+            names.add(name);
+            return;
+        }
+        for (String child : file.list()) {
+            collect(new File(file, child), name + "/" + child, names);
+        }
+    }
+
+    private static byte[] readEntry(ZipFile zip, ZipEntry entry) throws IOException {
+        return readAll(zip.getInputStream(entry));
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        return readAll(new FileInputStream(file));
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    static void assertSameFiles(File expected, File actual) throws IOException {
+        if (expected.isDirectory()) {
+            String[] names = expected.list();
+            assertEquals(names.length, actual.list().length);
+            for (String name : names) {
+                assertSameFiles(new File(expected, name), new File(actual, name));
+            }
+        } else {
+            assertEquals(EncryptUtils.getMD5File(expected), EncryptUtils.getMD5File(actual));
+        }
+    }
+}